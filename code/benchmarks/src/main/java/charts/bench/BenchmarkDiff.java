@@ -0,0 +1,85 @@
+package charts.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two JMH result files written with {@code -rf csv}: prints the score of every benchmark / parameter / metric
+ * (throughput, and secondary metrics such as the gc profiler's allocation rate) in both files and the relative change.
+ * Usage: {@code BenchmarkDiff baseline.csv current.csv [threshold%]}; exits with 1 if a throughput dropped by more than
+ * the threshold (default 10%).
+ */
+public class BenchmarkDiff {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: BenchmarkDiff baseline.csv current.csv [threshold%]");
+			System.exit(2);
+		}
+		Map<String, double[]> baseline  = read(args[0]);
+		Map<String, double[]> current   = read(args[1]);
+		double                threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+		boolean               regressed = false;
+		System.out.printf("%-90s %16s %16s %9s%n", "Benchmark", "Baseline", "Current", "Change");
+		for (Map.Entry<String, double[]> e : current.entrySet()) {
+			double[] b = baseline.get(e.getKey());
+			double   c = e.getValue()[0];
+			if (b == null) {
+				System.out.printf("%-90s %16s %16.3f %9s%n", e.getKey(), "-", c, "new");
+				continue;
+			}
+			double change = (c - b[0]) / b[0] * 100;
+			boolean throughput = !e.getKey().contains(":");
+			boolean worse      = throughput && change < -threshold;
+			regressed |= worse;
+			System.out.printf("%-90s %16.3f %16.3f %+8.1f%%%s%n", e.getKey(), b[0], c, change, worse ? " <<" : "");
+		}
+		for (String key : baseline.keySet()) {
+			if (!current.containsKey(key)) System.out.printf("%-90s %16.3f %16s %9s%n", key, baseline.get(key)[0], "-", "removed");
+		}
+		if (regressed) System.exit(1);
+	}
+
+	/**
+	 * Score and error by "benchmark [params] unit" from a JMH csv file.
+	 */
+	static Map<String, double[]> read(String file) throws IOException {
+		List<String>          lines  = Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8);
+		List<String>          header = split(lines.get(0));
+		Map<String, double[]> scores = new LinkedHashMap<>();
+		for (String line : lines.subList(1, lines.size())) {
+			if (line.trim().isEmpty()) continue;
+			List<String>  f   = split(line);
+			StringBuilder key = new StringBuilder(f.get(header.indexOf("Benchmark")));
+			for (int i = 0; i < header.size(); i++) {
+				if (header.get(i).startsWith("Param: ")) key.append(' ').append(header.get(i).substring(7)).append('=').append(f.get(i));
+			}
+			key.append(" [").append(f.get(header.indexOf("Unit"))).append(']');
+			String error = f.get(header.indexOf("Score Error (99.9%)"));
+			scores.put(key.toString(), new double[]{Double.parseDouble(f.get(header.indexOf("Score"))),
+					error.isEmpty() || error.equals("NaN") ? Double.NaN : Double.parseDouble(error)});
+		}
+		return scores;
+	}
+
+	private static List<String> split(String line) {
+		List<String>  fields = new ArrayList<>();
+		StringBuilder b      = new StringBuilder();
+		boolean       quoted = false;
+		for (char c : line.toCharArray()) {
+			if (c == '"') quoted = !quoted;
+			else if (c == ',' && !quoted) {
+				fields.add(b.toString());
+				b.setLength(0);
+			} else b.append(c);
+		}
+		fields.add(b.toString());
+		return fields;
+	}
+}
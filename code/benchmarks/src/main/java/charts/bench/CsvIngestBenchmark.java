@@ -0,0 +1,50 @@
+package charts.bench;
+
+import charts.Datasets;
+import org.openjdk.jmh.annotations.*;
+import tech.tablesaw.api.Table;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a JHU time series file with Tablesaw's type inference and with {@link Datasets#JHU_TIME_SERIES_COLUMNS};
+ * run with {@code -prof gc} to compare the allocations.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CsvIngestBenchmark {
+
+	@Param({"300x500", "3000x1000"})
+	public String size;
+
+	private Path file;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		int[] s = Fixtures.parseSize(size);
+		file = Files.createTempFile("jhu", ".csv");
+		Fixtures.jhuWide(s[0], s[1], 42).write().csv(file.toFile());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.delete(file);
+	}
+
+	@Benchmark
+	public Table tablesaw() throws IOException {
+		return Table.read().csv(file.toFile());
+	}
+
+	@Benchmark
+	public Table schema() throws IOException {
+		return Datasets.JHU_TIME_SERIES_COLUMNS.read(file, "jhu").table;
+	}
+}
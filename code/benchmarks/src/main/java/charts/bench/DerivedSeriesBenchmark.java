@@ -0,0 +1,55 @@
+package charts.bench;
+
+import charts.Covid19Charts;
+import charts.SeriesKernels;
+import charts.TableUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import tech.tablesaw.api.NumericColumn;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Daily differences (and their rolling average) of the cumulative series of every region, as computed for the region
+ * charts.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+// the 30000x2000 inputs are tables of 60M rows
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+@State(Scope.Benchmark)
+public class DerivedSeriesBenchmark {
+
+	@Param({"300x500", "3000x1000", "30000x2000"})
+	public String size;
+
+	private NumericColumn<?>[] confirmed;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		int[] s = Fixtures.parseSize(size);
+		TableUtils.RegionGroups groups = TableUtils.groupByRegion(Covid19Charts.toTimeSeries(Fixtures.jhuWide(s[0], s[1], 42), "CONFIRMED"), "CONFIRMED");
+		confirmed = new NumericColumn<?>[groups.size()];
+		for (int g = 0; g < confirmed.length; g++) {
+			confirmed[g] = groups.table(g).numberColumn("CONFIRMED");
+		}
+	}
+
+	@Benchmark
+	public void d1(Blackhole bh) {
+		for (NumericColumn<?> c : confirmed) {
+			bh.consume(TableUtils.d1(c, "NEW_CONFIRMED"));
+		}
+	}
+
+	@Benchmark
+	public void increaseAndAverage(Blackhole bh) {
+		for (NumericColumn<?> c : confirmed) {
+			double[] values = c.asDoubleArray();
+			bh.consume(SeriesKernels.increase(values, true));
+			bh.consume(SeriesKernels.rollingIncreaseMean(values, true, 7));
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package charts.bench;
+
+import tech.tablesaw.api.DateColumn;
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.IntColumn;
+import tech.tablesaw.api.StringColumn;
+import tech.tablesaw.api.Table;
+import tech.tablesaw.columns.Column;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic inputs shaped like the real sources. Sizes are given as "regions x days", e.g. "3000x1000".
+ */
+public class Fixtures {
+
+	public static final LocalDate START = LocalDate.of(2020, 1, 22);
+
+	public static int[] parseSize(String size) {
+		String[] parts = size.split("x");
+		return new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1])};
+	}
+
+	/**
+	 * JHU time series file: Province/State, Country/Region, Lat, Long and one cumulative int column per day.
+	 */
+	public static Table jhuWide(int regions, int days, long seed) {
+		Random          rnd     = new Random(seed);
+		List<Column<?>> columns = new ArrayList<>();
+		String[]        province = new String[regions];
+		String[]        country  = new String[regions];
+		double[]        coord    = new double[regions];
+		for (int r = 0; r < regions; r++) {
+			province[r] = r % 4 == 0 ? "Province " + r : "";
+			country[r] = "Country " + (r % 4 == 0 ? r / 4 : r);
+			coord[r] = rnd.nextDouble() * 90;
+		}
+		columns.add(StringColumn.create("Province/State", province));
+		columns.add(StringColumn.create("Country/Region", country));
+		columns.add(DoubleColumn.create("Lat", coord));
+		columns.add(DoubleColumn.create("Long", coord));
+		int[][] values = new int[days][regions];
+		for (int r = 0; r < regions; r++) {
+			int start = rnd.nextInt(days / 3 + 1);
+			for (int d = start, v = 0; d < days; d++) {
+				v += rnd.nextInt(100);
+				values[d][r] = v;
+			}
+		}
+		DateTimeFormatter header = DateTimeFormatter.ofPattern("M/d/yy");
+		for (int d = 0; d < days; d++) {
+			columns.add(IntColumn.create(START.plusDays(d).format(header), values[d]));
+		}
+		return Table.create("jhu", columns.toArray(new Column<?>[0]));
+	}
+
+	/**
+	 * openZH long file after column selection: DT, REGION and int metrics, with days and values missing at random.
+	 */
+	public static Table openZhLong(int regions, int days, long seed) {
+		Random       rnd    = new Random(seed);
+		LocalDate    start  = LocalDate.of(2020, 2, 25);
+		DateColumn   dt     = DateColumn.create("DT");
+		StringColumn region = StringColumn.create("REGION");
+		IntColumn    conf   = IntColumn.create("CONFIRMED");
+		IntColumn    dead   = IntColumn.create("DEAD");
+		IntColumn    hosp   = IntColumn.create("HOSPITALIZED");
+		for (int r = 0; r < regions; r++) {
+			String name      = "R" + r;
+			int    confirmed = 0;
+			int    deceased  = 0;
+			for (int d = rnd.nextInt(days / 4 + 1); d < days; d++) {
+				confirmed += rnd.nextInt(20);
+				deceased += rnd.nextInt(2);
+				// sparse reporting: roughly a third of the days are missing, some values are not reported
+				if (rnd.nextInt(3) == 0) continue;
+				dt.append(start.plusDays(d));
+				region.append(name);
+				if (rnd.nextInt(10) == 0) conf.appendMissing();
+				else conf.append(confirmed);
+				dead.append(deceased);
+				if (rnd.nextInt(5) == 0) hosp.appendMissing();
+				else hosp.append(rnd.nextInt(100));
+			}
+		}
+		return Table.create("openzh", dt, region, conf, dead, hosp);
+	}
+}
@@ -0,0 +1,72 @@
+package charts.bench;
+
+import charts.Covid19Charts;
+import charts.TableUtils;
+import charts.TimeSeriesChart;
+import charts.WebUtils;
+import org.openjdk.jmh.annotations.*;
+import tech.tablesaw.api.Table;
+import tech.tablesaw.plotly.components.Figure;
+import tech.tablesaw.plotly.traces.ScatterTrace;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chart construction and page rendering for the top regions of a JHU file, the way the global page builds them
+ * (capped at {@link #CHARTS} charts, the page never shows more). The cost does not grow with the number of regions, so
+ * the largest size is left out.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RenderBenchmark {
+
+	static final int CHARTS = 75;
+
+	@Param({"300x500", "3000x1000"})
+	public String size;
+
+	private Table[]           regions;
+	private TimeSeriesChart[] charts;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		int[]                   s      = Fixtures.parseSize(size);
+		Table                   t      = Covid19Charts.toTimeSeries(Fixtures.jhuWide(s[0], s[1], 42), "CONFIRMED");
+		TableUtils.RegionGroups groups = TableUtils.groupByRegion(t, "CONFIRMED");
+		regions = new Table[Math.min(CHARTS, groups.size())];
+		charts = new TimeSeriesChart[regions.length];
+		for (int g = 0; g < regions.length; g++) {
+			regions[g] = groups.table(g);
+			regions[g].addColumns(TableUtils.d1(regions[g].numberColumn("CONFIRMED"), "NEW_CONFIRMED"));
+			charts[g] = new TimeSeriesChart(regions[g], "DT", new String[][]{{"CONFIRMED"}, {"NEW_CONFIRMED"}},
+					new ScatterTrace.Mode[][]{{ScatterTrace.Mode.LINE}, {ScatterTrace.Mode.LINE_AND_MARKERS}},
+					(g + 1) + ". " + groups.region(g), new String[]{"TOTAL", "NEW"}).key(groups.region(g));
+		}
+	}
+
+	@Benchmark
+	public String timeSeriesPlot() {
+		StringBuilder sb = new StringBuilder();
+		for (int g = 0; g < regions.length; g++) {
+			Figure f = TableUtils.timeSeriesPlot(regions[g], "DT", new String[][]{{"CONFIRMED"}, {"NEW_CONFIRMED"}},
+					new ScatterTrace.Mode[][]{{ScatterTrace.Mode.LINE}, {ScatterTrace.Mode.LINE_AND_MARKERS}},
+					(g + 1) + ". region", new String[]{"TOTAL", "NEW"});
+			sb.append(f.asJavascript("div" + g));
+		}
+		return sb.toString();
+	}
+
+	@Benchmark
+	public String toHtml() {
+		return WebUtils.toHtml("<p>benchmark</p>", charts);
+	}
+
+	@Benchmark
+	public String toCompactHtml() {
+		return WebUtils.toCompactHtml("<p>benchmark</p>", charts);
+	}
+}
@@ -0,0 +1,43 @@
+package charts.bench;
+
+import charts.Covid19Charts;
+import org.openjdk.jmh.annotations.*;
+import tech.tablesaw.api.Table;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wide-to-long reshaping of a JHU file and forward filling of an openZH file.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+// the 30000x2000 inputs are tables of 60M rows
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+@State(Scope.Benchmark)
+public class ReshapeBenchmark {
+
+	@Param({"300x500", "3000x1000", "30000x2000"})
+	public String size;
+
+	private Table jhu;
+	private Table openZh;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		int[] s = Fixtures.parseSize(size);
+		jhu = Fixtures.jhuWide(s[0], s[1], 42);
+		openZh = Fixtures.openZhLong(s[0], s[1], 42);
+	}
+
+	@Benchmark
+	public Table toTimeSeries() {
+		return Covid19Charts.toTimeSeries(jhu, "CONFIRMED");
+	}
+
+	@Benchmark
+	public Table fillMissingAtPrevious() {
+		return Covid19Charts.fillMissingAtPrevious(openZh);
+	}
+}
@@ -0,0 +1,233 @@
+package charts;
+
+import org.jetbrains.annotations.Nullable;
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.IntColumn;
+import tech.tablesaw.api.Table;
+import tech.tablesaw.plotly.traces.ScatterTrace;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Builds the page of any {@link Dataset}: ingest (download and normalize), group by region once, aggregate the summary
+ * chart and the charts of the top regions, render. Usage: {@code ChartEngine <output dir> [<store dir>]} writes all
+ * {@link Datasets#PUBLISHED} pages in one run; the downloads of all of them are started first.
+ */
+public class ChartEngine {
+
+	private static final Map<String, Download> prefetched = new ConcurrentHashMap<>();
+
+	/**
+	 * Starts the downloads of all sources of {@code datasets}; {@link #ingest(Dataset, SeriesStore)} then picks them up
+	 * instead of starting its own. Downloads of an earlier call that were not picked up are cancelled and dropped, so a
+	 * page that was not built since never gets a stale table, and the table is not kept in memory meanwhile.
+	 */
+	public static void prefetch(List<Dataset> datasets) {
+		for (Download download : prefetched.values()) download.table.cancel(true);
+		prefetched.clear();
+		for (Dataset d : datasets) {
+			for (Dataset.Source s : d.sources.get()) {
+				prefetched.computeIfAbsent(s.url, url -> new Download(s));
+			}
+		}
+	}
+
+	/**
+	 * Downloads the sources of {@code d} and returns its normalized long table.
+	 */
+	public static Table ingest(Dataset d, @Nullable SeriesStore store) throws IOException {
+		if (d.loader != null) return d.loader.load(store);
+		List<Dataset.Source> sources   = d.sources.get();
+		List<Download>       downloads = new ArrayList<>();
+		for (Dataset.Source s : sources) {
+			Download download = prefetched.remove(s.url);
+			downloads.add(download != null ? download : new Download(s));
+		}
+		List<Table> raw = new ArrayList<>();
+		for (int i = 0; i < sources.size(); i++) {
+			try {
+				raw.add(SourceCache.get(downloads.get(i).table));
+			} catch (IOException | RuntimeException e) {
+				if (!sources.get(i).optional) throw e;
+				System.out.println("Download failed for " + sources.get(i).url + ": " + e);
+				raw.add(null);
+			} finally {
+				RunReport.attach(downloads.get(i).stages);
+			}
+		}
+		return d.normalizer.normalize(raw, store);
+	}
+
+	/**
+	 * A download and parse of a source on the fetch pool. Its stages are recorded apart and added to the run that
+	 * takes the table, which for a prefetched source is not the run that was current when the download started.
+	 */
+	private static class Download {
+		final RunReport     stages;
+		final Future<Table> table;
+
+		Download(Dataset.Source s) {
+			stages = RunReport.detached(s.url);
+			table = SourceCache.shared().submit(RunReport.bound(stages, () -> SourceCache.shared().readCsv(s.url, s.immutable, s.schema)));
+		}
+	}
+
+	public static HtmlPage page(Dataset d, @Nullable SeriesStore store) throws IOException {
+		return render(d, ingest(d, store));
+	}
+
+	/**
+	 * Summary chart (sums over all regions by date) followed by one chart per region, ordered by the maximum of the
+	 * rank metric. The sums, the per-region maxima and the ranking come from one {@link RegionAggregates} pass; at a
+	 * coarser {@link Dataset#resolution(Rollups.Resolution) resolution} the region series come from one
+	 * {@link Rollups} pass.
+	 */
+	public static HtmlPage render(Dataset d, Table t) {
+		RegionAggregates        aggregates;
+		TableUtils.RegionGroups groups;
+		try (RunReport.Stage stage = RunReport.stage("summarize", "aggregate")) {
+			aggregates = RegionAggregates.of(t, aggregated(d));
+			stage.rows(t.rowCount());
+		}
+		try (RunReport.Stage stage = RunReport.stage("summarize", "by region")) {
+			groups = TableUtils.groupByRegion(t);
+			stage.rows(t.rowCount());
+		}
+		Rollups rollups = null;
+		if (d.resolution != Rollups.Resolution.DAY) {
+			try (RunReport.Stage stage = RunReport.stage("rollup", d.resolution.toString())) {
+				rollups = Rollups.of(d, groups);
+				stage.rows(t.rowCount());
+			}
+		}
+		List<TimeSeriesChart> charts = new ArrayList<>();
+		charts.add(summaryChart(d, aggregates));
+		try (RunReport.Stage stage = RunReport.stage("figures", null)) {
+			charts.addAll(regionCharts(d, aggregates, groups, rollups));
+			stage.rows(charts.size());
+		}
+		return new HtmlPage(d.body.apply(t.dateColumn("DT").max()), charts.toArray(new TimeSeriesChart[0]));
+	}
+
+	/**
+	 * The charted metrics, the ones new metrics are derived from and the rank metric, each once.
+	 */
+	private static String[] aggregated(Dataset d) {
+		Set<String> metrics = new LinkedHashSet<>(Arrays.asList(d.metrics));
+		metrics.addAll(Arrays.asList(d.newMetrics));
+		metrics.add(d.rankMetric);
+		return metrics.toArray(new String[0]);
+	}
+
+	private static TimeSeriesChart summaryChart(Dataset d, RegionAggregates aggregates) {
+		Table summary = aggregates.sumsByDate();
+		if (d.summaryToCommonLastDate) {
+			LocalDate last = aggregates.commonLastDate();
+			if (last == null) throw new IllegalStateException("A region of " + d.name + " has no dated rows");
+			summary = summary.where(summary.dateColumn("DT").isOnOrBefore(last));
+		}
+		String[] sumNames = Arrays.stream(d.metrics).map(RegionAggregates::sumName).toArray(String[]::new);
+		String   title    = d.summaryTitle + ": " + String.format("%,d", (int) summary.numberColumn(RegionAggregates.sumName(d.rankMetric)).max()) + " " + d.rankMetric;
+		if (d.resolution != Rollups.Resolution.DAY) {
+			summary = Rollups.ofSeries(d, summary, RegionAggregates::sumName).table(d.resolution, 0);
+		} else {
+			addNewColumns(d, summary, RegionAggregates::sumName);
+			if (d.dropNegativeNew && d.newMetrics.length > 0) {
+				summary = summary.where(summary.intColumn(d.newName(d.newMetrics[0])).isGreaterThan(-1));
+			}
+		}
+		return new TimeSeriesChart(summary,
+				"DT",
+				new String[][]{sumNames, newNames(d)},
+				modes(d),
+				title,
+				yTitles(d)).downsample(d.downsampler);
+	}
+
+	private static List<TimeSeriesChart> regionCharts(Dataset d, RegionAggregates aggregates, TableUtils.RegionGroups groups, @Nullable Rollups rollups) {
+		int[] top = aggregates.top(d.rankMetric, d.topRegions);
+		return Parallel.map(top.length, i -> {
+			String region = aggregates.region(top[i]);
+			Table  tt;
+			if (rollups != null) {
+				tt = rollups.table(d.resolution, groups.indexOf(region));
+			} else {
+				tt = groups.table(groups.indexOf(region));
+				addNewColumns(d, tt, m -> m);
+			}
+			return new TimeSeriesChart(tt,
+					"DT",
+					new String[][]{d.metrics, newNames(d)},
+					modes(d),
+					(i + 1) + ". " + region + ": " + String.format("%,d", (int) aggregates.max(top[i], d.rankMetric)) + " " + d.rankMetric,
+					yTitles(d)).key(region).downsample(d.downsampler);
+		});
+	}
+
+	/**
+	 * Adds the daily increase (and its rolling average) of every new metric, read from column
+	 * {@code cumulative.apply(metric)}; each column is one presized {@link SeriesKernels} pass over the region.
+	 */
+	private static void addNewColumns(Dataset d, Table t, Function<String, String> cumulative) {
+		for (String m : d.newMetrics) {
+			double[] values = t.numberColumn(cumulative.apply(m)).asDoubleArray();
+			t.addColumns(IntColumn.create(d.newName(m), SeriesKernels.increase(values, d.clampNew)));
+			if (d.averageDays > 0) {
+				t.addColumns(DoubleColumn.create(d.averageName(m), SeriesKernels.rollingIncreaseMean(values, d.clampNew, d.averageDays)));
+			}
+		}
+	}
+
+	private static String[] newNames(Dataset d) {
+		List<String> names = new ArrayList<>();
+		for (String m : d.newMetrics) {
+			names.add(d.newName(m));
+			if (d.averageDays > 0 && d.resolution == Rollups.Resolution.DAY) names.add(d.averageName(m));
+		}
+		return names.toArray(new String[0]);
+	}
+
+	private static String[] yTitles(Dataset d) {
+		if (d.resolution == Rollups.Resolution.DAY) return d.yTitles;
+		return new String[]{d.yTitles[0], d.yTitles[1] + " PER " + d.resolution};
+	}
+
+	private static ScatterTrace.Mode[][] modes(Dataset d) {
+		ScatterTrace.Mode[][] modes = {new ScatterTrace.Mode[d.metrics.length], new ScatterTrace.Mode[newNames(d).length]};
+		for (ScatterTrace.Mode[] axis : modes) Arrays.fill(axis, ScatterTrace.Mode.LINE_AND_MARKERS);
+		return modes;
+	}
+
+	/**
+	 * Downloads, builds and writes the page of {@code d} to {@code path}, recording the run in a {@link RunReport}.
+	 */
+	public static void update(Dataset d, Path path, @Nullable SeriesStore store) throws IOException {
+		RunReport report = RunReport.start(d.name);
+		try {
+			page(d, store).write(path);
+		} finally {
+			report.finish();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		Path        dir   = Paths.get(args[0]);
+		SeriesStore store = args.length > 1 ? new SeriesStore(Paths.get(args[1])) : null;
+		prefetch(Datasets.PUBLISHED);
+		for (Dataset d : Datasets.PUBLISHED) {
+			update(d, dir.resolve(d.fileName), store);
+		}
+	}
+}
@@ -1,16 +1,17 @@
 package charts;
 
 
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 import org.apache.commons.lang3.ArrayUtils;
 import org.jetbrains.annotations.NotNull;
-import tech.tablesaw.aggregate.AggregateFunctions;
+import org.jetbrains.annotations.Nullable;
 import tech.tablesaw.api.*;
-import tech.tablesaw.plotly.components.Figure;
-import tech.tablesaw.plotly.traces.ScatterTrace;
+import tech.tablesaw.columns.Column;
+import tech.tablesaw.columns.dates.PackedLocalDate;
+import tech.tablesaw.columns.numbers.IntColumnType;
 
 import java.awt.*;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Instant;
@@ -19,163 +20,276 @@ import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 public class Covid19Charts {
 
-    public static Table by_region(Table in) {
-        StringColumn region = StringColumn.create("REGION");
+    private static final DateTimeFormatter JHU_DATE_FORMAT = DateTimeFormatter.ofPattern("M/d/yy");
+
+    /**
+     * Parsed JHU header dates, shared by the confirmed, dead and recovered files and by all runs of the process.
+     */
+    private static final Map<String, LocalDate> JHU_DATES = new ConcurrentHashMap<>();
+
+    private static final Pattern JHU_DATE_HEADER = Pattern.compile("\\d{1,2}/\\d{1,2}/\\d{2}");
+
+    /**
+     * True for the header of a date column of a JHU time series file, e.g. "3/21/20".
+     */
+    public static boolean isJhuDate(String header) {
+        return JHU_DATE_HEADER.matcher(header).matches();
+    }
+
+    /**
+     * Region name per row of a JHU time series table: "Country" or "Country - Province". Names are interned so that
+     * repeated regions share one String instance.
+     */
+    public static String[] regionNames(Table in) {
         StringColumn province_col = in.stringColumn("Province/State");
         StringColumn country_col = in.stringColumn("Country/Region");
+        Map<String, String> interned = new HashMap<>();
+        String[] names = new String[in.rowCount()];
         for (int r = 0; r < in.rowCount(); r++) {
-            if (in.stringColumn(0).get(r).length() > 0) {
-                region.append(country_col.get(r) + " - " + province_col.get(r));
-            } else region.append(country_col.get(r));
+            String name = province_col.get(r).length() > 0 ? country_col.get(r) + " - " + province_col.get(r) : country_col.get(r);
+            names[r] = interned.computeIfAbsent(name, n -> n);
         }
-        return Table.create(region).addColumns(ArrayUtils.subarray(in.columnArray(), 4, in.columnCount()));
+        return names;
     }
 
-    public static Table toTimeSeries(Table raw, String valueName) {
-        Table t = by_region(raw);
-        String[] dates_str = ArrayUtils.subarray(t.columnNames().toArray(new String[0]), 1, t.columnCount());
-        LocalDate[] dates = Arrays.stream(dates_str).map(s -> LocalDate.parse(s, DateTimeFormatter.ofPattern("M/d/yy"))).toArray(LocalDate[]::new);
+    public static Table by_region(Table in) {
+        return Table.create(StringColumn.create("REGION", regionNames(in))).addColumns(ArrayUtils.subarray(in.columnArray(), 4, in.columnCount()));
+    }
 
-        StringColumn regionCol = StringColumn.create("REGION");
-        DateColumn dateCol = DateColumn.create("DT");
-        DoubleColumn valueCol = DoubleColumn.create(valueName);
+    /**
+     * Melts a wide JHU time series table (one column per date) into a long REGION, DT, valueName table. The header
+     * dates are parsed once and the output columns are presized and filled column by column from primitive arrays.
+     * Date columns are recognized by their header, so the table may or may not have the Lat and Long columns.
+     */
+    public static Table toTimeSeries(Table raw, String valueName) {
+        return toTimeSeries(raw, valueName, null);
+    }
 
+    /**
+     * Same as {@link #toTimeSeries(Table, String)} restricted to the date columns on or after {@code from}.
+     */
+    public static Table toTimeSeries(Table raw, String valueName, @Nullable LocalDate from) {
+        String[] regions = regionNames(raw);
+        List<Integer> dateCols = new ArrayList<>();
+        List<LocalDate> dates = new ArrayList<>();
+        for (int c = 0; c < raw.columnCount(); c++) {
+            if (!isJhuDate(raw.column(c).name())) continue;
+            LocalDate dt = JHU_DATES.computeIfAbsent(raw.column(c).name(), n -> LocalDate.parse(n, JHU_DATE_FORMAT));
+            if (from == null || !dt.isBefore(from)) {
+                dateCols.add(c);
+                dates.add(dt);
+            }
+        }
+        int numDates = dates.size();
+        int size = regions.length * numDates;
 
-        for (int r = 0; r < t.rowCount(); r++) {
-            for (int c = 1; c < t.columnCount(); c++) {
-                regionCol.append(t.stringColumn(0).get(r));
-                dateCol.append(dates[c - 1]);
-                valueCol.append(t.numberColumn(c).get(r));
+        String[] regionArr = new String[size];
+        for (int r = 0; r < regions.length; r++) {
+            Arrays.fill(regionArr, r * numDates, (r + 1) * numDates, regions[r]);
+        }
+        DateColumn dateCol = DateColumn.create("DT", size);
+        double[] values = new double[size];
+        for (int c = 0; c < numDates; c++) {
+            int packed = PackedLocalDate.pack(dates.get(c));
+            double[] dateValues = ((NumericColumn<?>) raw.column(dateCols.get(c))).asDoubleArray();
+            for (int r = 0, idx = c; r < regions.length; r++, idx += numDates) {
+                dateCol.set(idx, packed);
+                values[idx] = dateValues[r];
             }
         }
-        return Table.create(regionCol, dateCol, valueCol);
+        return Table.create(StringColumn.create("REGION", regionArr), dateCol, DoubleColumn.create(valueName, values));
     }
 
+    /**
+     * Densifies a long table (REGION, DT and int metric columns) so that every region has one row per day from its
+     * first reported date up to the last date of the whole table. Missing or decreasing values are carried forward
+     * from the previous day, so every metric is monotone per region.
+     * <p>
+     * Rows are grouped in a single pass and the output is written straight into primitive arrays laid out in
+     * (DT, region) order: regions are ranked by first reported date, so the regions present on a day are always a
+     * prefix of that ranking and each (region, day) cell has a fixed position. The result needs no sort and no appends.
+     */
     public static Table fillMissingAtPrevious(Table t) {
-        Set<String> regions = new HashSet<>(t.stringColumn("REGION").asList());
-        LocalDate last_dt = t.dateColumn("DT").max();
-        Table f = null;
-        for (String r : regions) {
-            Table region_data = t.where(t.stringColumn("REGION").isEqualTo(r)).sortAscendingOn("DT");
-            LocalDate[] dates = region_data.dateColumn("DT").asObjectArray();
-            LocalDate dt = region_data.dateColumn("DT").min();
-            int[] prev_values = new int[t.columnCount() - 2];
-            Arrays.fill(prev_values, 0);
-            while (!dt.isAfter(last_dt)) {
-                int idx = Arrays.binarySearch(dates, dt);
-                if (idx < 0) {
-                    region_data.dateColumn("DT").append(dt);
-                    region_data.stringColumn("REGION").append(r);
-                    for (int c = 0; c < prev_values.length; c++) {
-                        region_data.intColumn(c + 2).append(prev_values[c]);
-                    }
-                } else {
-                    for (int c = 0; c < prev_values.length; c++) {
-                        IntColumn col = region_data.intColumn(c + 2);
-                        if (col.isMissing(idx) || col.getInt(idx) < prev_values[c]) {
-                            col.set(idx, prev_values[c]);
-                        } else {
-                            prev_values[c] = col.getInt(idx);
-                        }
-                    }
+        StringColumn regionCol = t.stringColumn("REGION");
+        DateColumn dateCol = t.dateColumn("DT");
+        List<IntColumn> valueCols = new ArrayList<>();
+        for (Column<?> c : t.columns()) {
+            if (c != regionCol && c != dateCol) valueCols.add((IntColumn) c);
+        }
+        if (t.rowCount() == 0) return t.emptyCopy();
+
+        Map<String, Integer> regionIds = new HashMap<>();
+        List<String> regionNames = new ArrayList<>();
+        int[] firstDay = new int[16];
+        int[] rowRegion = new int[t.rowCount()];
+        int[] rowDay = new int[t.rowCount()];
+        int minDay = Integer.MAX_VALUE;
+        int maxDay = Integer.MIN_VALUE;
+        for (int r = 0; r < t.rowCount(); r++) {
+            if (dateCol.isMissing(r)) {
+                rowRegion[r] = -1;
+                continue;
+            }
+            int day = (int) PackedLocalDate.toEpochDay(dateCol.getIntInternal(r));
+            Integer id = regionIds.get(regionCol.get(r));
+            if (id == null) {
+                id = regionNames.size();
+                regionIds.put(regionCol.get(r), id);
+                regionNames.add(regionCol.get(r));
+                if (id == firstDay.length) firstDay = Arrays.copyOf(firstDay, id * 2);
+                firstDay[id] = day;
+            } else if (day < firstDay[id]) {
+                firstDay[id] = day;
+            }
+            rowRegion[r] = id;
+            rowDay[r] = day;
+            minDay = Math.min(minDay, day);
+            maxDay = Math.max(maxDay, day);
+        }
+        if (regionNames.isEmpty()) return t.emptyCopy();
+
+        int numRegions = regionNames.size();
+        int numDays = maxDay - minDay + 1;
+        final int[] first = firstDay;
+        Integer[] order = new Integer[numRegions];
+        for (int i = 0; i < numRegions; i++) order[i] = i;
+        Arrays.sort(order, Comparator.<Integer>comparingInt(i -> first[i]).thenComparing(regionNames::get));
+        int[] position = new int[numRegions];
+        int[] startingOn = new int[numDays];
+        for (int p = 0; p < numRegions; p++) {
+            position[order[p]] = p;
+            startingOn[first[order[p]] - minDay]++;
+        }
+        // dayOffset[d] is the output row of the first region on day d, active[d] the number of regions on that day
+        int[] active = new int[numDays];
+        int[] dayOffset = new int[numDays + 1];
+        for (int d = 0; d < numDays; d++) {
+            active[d] = (d == 0 ? 0 : active[d - 1]) + startingOn[d];
+            dayOffset[d + 1] = dayOffset[d] + active[d];
+        }
+        int size = dayOffset[numDays];
+
+        int[][] values = new int[valueCols.size()][size];
+        for (int[] v : values) Arrays.fill(v, IntColumnType.missingValueIndicator());
+        for (int r = 0; r < t.rowCount(); r++) {
+            if (rowRegion[r] < 0) continue;
+            int idx = dayOffset[rowDay[r] - minDay] + position[rowRegion[r]];
+            for (int c = 0; c < values.length; c++) {
+                values[c][idx] = valueCols.get(c).getInt(r);
+            }
+        }
+        // carry forward: a missing value is Integer.MIN_VALUE, so the running max also fills gaps
+        int[] prev = new int[numRegions];
+        for (int[] v : values) {
+            Arrays.fill(prev, 0);
+            for (int d = 0; d < numDays; d++) {
+                for (int p = 0, idx = dayOffset[d]; p < active[d]; p++, idx++) {
+                    if (v[idx] < prev[p]) v[idx] = prev[p];
+                    else prev[p] = v[idx];
                 }
-                dt = dt.plusDays(1);
             }
-            if (f == null) f = region_data;
-            else f = f.append(region_data);
         }
-        return Objects.requireNonNull(f).sortAscendingOn("DT");
+
+        String[] regions = new String[size];
+        DateColumn dates = DateColumn.create(dateCol.name());
+        for (int d = 0; d < numDays; d++) {
+            int packed = PackedLocalDate.pack(LocalDate.ofEpochDay(minDay + d));
+            for (int p = 0, idx = dayOffset[d]; p < active[d]; p++, idx++) {
+                regions[idx] = regionNames.get(order[p]);
+                dates.appendInternal(packed);
+            }
+        }
+        Table f = Table.create(t.name());
+        for (Column<?> c : t.columns()) {
+            if (c == regionCol) f.addColumns(StringColumn.create(c.name(), regions));
+            else if (c == dateCol) f.addColumns(dates);
+            else f.addColumns(IntColumn.create(c.name(), values[valueCols.indexOf(c)]));
+        }
+        return f;
+    }
+
+
+    /**
+     * Incremental variant of {@link #fillMissingAtPrevious(Table)}: only the rows of {@code t} on or after
+     * {@code from} are densified, carrying forward from the rows of the previously filled table on the day before
+     * {@code from}. Returns the filled rows on or after {@code from}, or the whole filled table when there is no
+     * previous state.
+     */
+    public static Table fillMissingAtPrevious(Table t, @Nullable Table filled, @Nullable LocalDate from) {
+        if (filled == null || from == null) return fillMissingAtPrevious(t);
+        Table seed = filled.where(filled.dateColumn("DT").isEqualTo(from.minusDays(1)));
+        Table f = fillMissingAtPrevious(seed.append(t.where(t.dateColumn("DT").isOnOrAfter(from))));
+        return f.where(f.dateColumn("DT").isOnOrAfter(from));
     }
 
 
     public static class SwissCharts {
 
         public static String download_CH_html_charts() throws IOException {
-            Table data = Table.read().url("https://raw.githubusercontent.com/openZH/covid_19/master/COVID19_Fallzahlen_CH_total_v2.csv");
-
-
-            final Table t = fillMissingAtPrevious(
-                    Table.create(data.dateColumn("date").setName("DT"),
-                            data.stringColumn("abbreviation_canton_and_fl").setName("REGION"),
-                            data.intColumn("ncumul_conf").setName("CONFIRMED"),
-                            data.intColumn("ncumul_deceased").setName("DEAD"),
-                            data.intColumn("current_hosp").setName("HOSPITALIZED"),
-                            data.intColumn("current_icu").setName("ICU"),
-                            data.intColumn("ncumul_released").setName("RELEASED")));
-            Set<String> regions = new HashSet<>(t.stringColumn("REGION").asList());
-
-            LocalDate last_date_in_summary = regions.stream().map(r -> t.where(t.stringColumn("REGION").isEqualTo(r)).dateColumn("DT").max()).min(Comparator.naturalOrder()).orElseThrow(RuntimeException::new);
-
-            Table summary = null;
-            for (int c = 2; c < t.columnCount(); c++) {
-                Table s = t.summarize(t.columnNames().get(c), AggregateFunctions.sum).by("DT");
-                if (summary == null) summary = s;
-                else summary = summary.joinOn("DT").inner(s);
-            }
-            summary = Objects.requireNonNull(summary).where(summary.dateColumn(0).isOnOrBefore(last_date_in_summary));
-            summary = summary.addColumns(TableUtils.d1(summary.numberColumn(1), "NEW_CONFIRMED"));
-            summary = summary.addColumns(TableUtils.d1(summary.numberColumn(2), "NEW_DEAD"));
-            summary = summary.where(summary.intColumn("NEW_CONFIRMED").isGreaterThan(-1));
-
-            List<Figure> figures = new ArrayList<>();
-            String[] dataCols = summary.columnNames().subList(1, 6).toArray(new String[0]);
-            ScatterTrace.Mode[] modes = Arrays.stream(dataCols).map(c -> ScatterTrace.Mode.LINE_AND_MARKERS).toArray(ScatterTrace.Mode[]::new);
-            figures.add(TableUtils.timeSeriesPlot(summary,
-                    "DT",
-                    new String[][]{dataCols,
-                            {"NEW_CONFIRMED", "NEW_DEAD"}},
-                    new ScatterTrace.Mode[][]{modes,
-                            {ScatterTrace.Mode.LINE_AND_MARKERS, ScatterTrace.Mode.LINE_AND_MARKERS}},
-                    "CH CASES: " + String.format("%,d", (int) summary.numberColumn(1).max()) + " CONFIRMED",
-                    new String[]{"TOTAL_CASES", "NEW_CASES"}));
-
-            Table maxConfirmedByRegion = t.summarize("CONFIRMED", AggregateFunctions.max)
-                    .by("REGION");
-            maxConfirmedByRegion = maxConfirmedByRegion.sortDescendingOn(maxConfirmedByRegion.columnNames().get(1));
-
-            StringColumn topRegions = maxConfirmedByRegion.stringColumn(0);
-
-            int counter = 1;
-            dataCols = t.columnNames().subList(2, t.columnCount()).toArray(new String[0]);
-            for (String region : topRegions.asList()) {
-                Table tt = t.where(t.stringColumn("REGION").isEqualTo(region));
-                tt = tt.addColumns(TableUtils.d1(tt.numberColumn("CONFIRMED"), "NEW_CONFIRMED"));
-                tt = tt.addColumns(TableUtils.d1(tt.numberColumn("DEAD"), "NEW_DEAD"));
-                int num_confirmed = (int) tt.numberColumn("CONFIRMED").max();
-                figures.add(TableUtils.timeSeriesPlot(tt,
-                        "DT",
-                        new String[][]{dataCols,
-                                {"NEW_CONFIRMED", "NEW_DEAD"}},
-                        new ScatterTrace.Mode[][]{modes,
-                                {ScatterTrace.Mode.LINE_AND_MARKERS, ScatterTrace.Mode.LINE_AND_MARKERS}},
-                        counter + ". " + region + ": " + String.format("%,d", num_confirmed) + " CONFIRMED",
-                        new String[]{"TOTAL_CASES", "NEW_CASES"}));
-                counter++;
+            return download_CH_page(null).toHtml();
+        }
+
+        public static Table toCantonSeries(Table data) {
+            return Table.create(data.dateColumn("date").setName("DT"),
+                    data.stringColumn("abbreviation_canton_and_fl").setName("REGION"),
+                    data.intColumn("ncumul_conf").setName("CONFIRMED"),
+                    data.intColumn("ncumul_deceased").setName("DEAD"),
+                    data.intColumn("current_hosp").setName("HOSPITALIZED"),
+                    data.intColumn("current_icu").setName("ICU"),
+                    data.intColumn("ncumul_released").setName("RELEASED"));
+        }
+
+        /**
+         * Densifies the canton series, incrementally in {@code store} when it is not null.
+         */
+        public static Table fillCantonSeries(Table data, @Nullable SeriesStore store) throws IOException {
+            Table cantons = toCantonSeries(data);
+            try (RunReport.Stage stage = RunReport.stage("fill", null)) {
+                Table t = store == null
+                        ? fillMissingAtPrevious(cantons)
+                        : store.update("ch", cantons.stringColumn("REGION").asSet(), (stored, from) -> fillMissingAtPrevious(cantons, stored, from));
+                stage.rows(t.rowCount());
+                return t;
             }
+        }
 
-            return WebUtils.toHtml("<p>COVID-19 cases in Switzerland.</p>" +
-                            "<p>Source: openZH <a target=\"_blank\" href=\"https://github.com/openZH/covid_19/blob/master/COVID19_Fallzahlen_CH_total_v2.csv\">here</a>.</p>" +
-                            "<p>Last reported date: " + t.dateColumn("DT").max() + ". Page updated " + Instant.ofEpochMilli(System.currentTimeMillis()).atZone(ZoneId.of("UTC")) + ".</p>" +
-                            "<p>" +
-                            "<a target=\"_blank\" href=\"https://smpawlowski.github.io/covid19/\">[Global]</a> " +
-                            modelLinks() + "</p>" +
-                            "<div class=\"share-page\">\n" +
-                            "    Share &rarr; " +
-                            "    <a target=\"_blank\" href=\"https://twitter.com/intent/tweet?url=https://smpawlowski.github.io/covid19/\">[Twitter]</a> " +
-                            "    <a target=\"_blank\" href=\"https://www.facebook.com/sharer/sharer.php?u=https%3A%2F%2Fsmpawlowski.github.io%2Fcovid19%2F&amp;src=sdkpreparse\" class=\"fb-xfbml-parse-ignore\">[Facebook]</a> " +
-                            "    <a target=\"_blank\" href=\"https://www.linkedin.com/shareArticle?mini=true&url=https://smpawlowski.github.io/covid19/\">[LinkedIn]</a> " +
-                            "</div>",
-                    figures.toArray(new Figure[0]));
+        /**
+         * @param store when not null, the filled canton series are updated incrementally in this store
+         */
+        public static HtmlPage download_CH_page(@Nullable SeriesStore store) throws IOException {
+            return ChartEngine.page(Datasets.OPENZH_CH, store);
         }
 
-        public static void main(String[] args) throws IOException {
-            String html = download_CH_html_charts();
+        public static String pageBody(LocalDate lastDate) {
+            return "<p>COVID-19 cases in Switzerland.</p>" +
+                    "<p>Source: openZH <a target=\"_blank\" href=\"https://github.com/openZH/covid_19/blob/master/COVID19_Fallzahlen_CH_total_v2.csv\">here</a>.</p>" +
+                    "<p>Last reported date: " + lastDate + ". Page updated " + Instant.ofEpochMilli(System.currentTimeMillis()).atZone(ZoneId.of("UTC")) + ".</p>" +
+                    "<p>" +
+                    "<a target=\"_blank\" href=\"https://smpawlowski.github.io/covid19/\">[Global]</a> " +
+                    modelLinks() + "</p>" +
+                    "<div class=\"share-page\">\n" +
+                    "    Share &rarr; " +
+                    "    <a target=\"_blank\" href=\"https://twitter.com/intent/tweet?url=https://smpawlowski.github.io/covid19/\">[Twitter]</a> " +
+                    "    <a target=\"_blank\" href=\"https://www.facebook.com/sharer/sharer.php?u=https%3A%2F%2Fsmpawlowski.github.io%2Fcovid19%2F&amp;src=sdkpreparse\" class=\"fb-xfbml-parse-ignore\">[Facebook]</a> " +
+                    "    <a target=\"_blank\" href=\"https://www.linkedin.com/shareArticle?mini=true&url=https://smpawlowski.github.io/covid19/\">[LinkedIn]</a> " +
+                    "</div>";
+        }
+
+        /**
+         * Downloads the data and writes the Swiss page to {@code path}, recording the run in a {@link RunReport}.
+         */
+        public static void update_page(Path path, @Nullable SeriesStore store) throws IOException {
+            ChartEngine.update(Datasets.OPENZH_CH, path, store);
+        }
 
+        public static void main(String[] args) throws IOException {
             final Path path = Paths.get(args.length == 0 ? "C:/temp/switzerland.html" : args[0]);
-            Files.write(path, html.getBytes());
+            update_page(path, args.length > 1 ? new SeriesStore(Paths.get(args[1])) : null);
             if (args.length == 0) Desktop.getDesktop().open(path.toFile());
         }
     }
@@ -186,81 +300,193 @@ public class Covid19Charts {
 
     @NotNull
     public static String download_html_charts() throws IOException {
-        Table confirmed = toTimeSeries(Table.read().url("https://raw.githubusercontent.com/CSSEGISandData/COVID-19/master/csse_covid_19_data/csse_covid_19_time_series/time_series_covid19_confirmed_global.csv"), "CONFIRMED");
-        Table dead = toTimeSeries(Table.read().url("https://raw.githubusercontent.com/CSSEGISandData/COVID-19/master/csse_covid_19_data/csse_covid_19_time_series/time_series_covid19_deaths_global.csv"), "DEAD");
-        Table recovered = toTimeSeries(Table.read().url("https://raw.githubusercontent.com/CSSEGISandData/COVID-19/master/csse_covid_19_data/csse_covid_19_time_series/time_series_covid19_recovered_global.csv"), "RECOVERED");
-
-        Table maxConfirmedByRegion = confirmed.summarize("CONFIRMED", AggregateFunctions.max)
-                .by("REGION");
-        maxConfirmedByRegion = maxConfirmedByRegion.sortDescendingOn(maxConfirmedByRegion.columnNames().get(1));
-
-        StringColumn topRegions = maxConfirmedByRegion.stringColumn(0).first(75);
-
-        System.out.println(maxConfirmedByRegion.print());
-
-        Table t = confirmed.joinOn("REGION", "DT")
-                .fullOuter(true, dead, recovered)
-                .sortAscendingOn("DT");
-        t = t.where(t.doubleColumn("CONFIRMED").isGreaterThan(0));
-        t = t.addColumns(t.nCol("CONFIRMED").subtract(t.nCol("RECOVERED")).subtract(t.nCol("DEAD")).setName("ACTIVE"));
-
-        List<Figure> figures = new ArrayList<>();
-        Table totalCases = t.summarize(t.column(2), t.column(3), t.column(4), t.column(5), AggregateFunctions.sum)
-                .by("DT");
-        String confirmed_name = columnNameContaning(totalCases, "CONFIRMED");
-        totalCases = totalCases.addColumns(TableUtils.apply(TableUtils.d1(totalCases.numberColumn(confirmed_name), "NEW CONFIRMED"), x -> Math.max(0, x)));
-        String dead_name = columnNameContaning(totalCases, "DEAD");
-        totalCases = totalCases.addColumns(TableUtils.apply(TableUtils.d1(totalCases.numberColumn(dead_name), "NEW DEAD"), x -> Math.max(0, x)));
-        System.out.println(totalCases.print());
-
-        String[] cumul_col_names = {"CONFIRMED", "ACTIVE", "RECOVERED", "DEAD"};
-        Table finalTotalCases = totalCases;
-        figures.add(TableUtils.timeSeriesPlot(
-                totalCases,
-                "DT",
-                new String[][]{Arrays.stream(cumul_col_names).map(n -> columnNameContaning(finalTotalCases, n)).toArray(String[]::new),
-                        {"NEW CONFIRMED", "NEW DEAD"}},
-                new ScatterTrace.Mode[][]{{ScatterTrace.Mode.LINE_AND_MARKERS, ScatterTrace.Mode.LINE_AND_MARKERS, ScatterTrace.Mode.LINE_AND_MARKERS, ScatterTrace.Mode.LINE_AND_MARKERS},
-                        {ScatterTrace.Mode.LINE_AND_MARKERS, ScatterTrace.Mode.LINE_AND_MARKERS}},
-                "GLOBAL CASES: " + String.format("%,d", (int) totalCases.numberColumn(confirmed_name).max()) + " CONFIRMED",
-                new String[]{"TOTAL CASES", "NEW CASES"}));
-        int counter = 1;
-        for (String region : topRegions.asList()) {
-            Table tt = t.where(t.stringColumn("REGION").isEqualTo(region));
-            tt = tt.addColumns(TableUtils.apply(TableUtils.d1(tt.numberColumn("CONFIRMED"), "NEW CONFIRMED"), x -> Math.max(0, x)));
-            tt = tt.addColumns(TableUtils.apply(TableUtils.d1(tt.numberColumn("DEAD"), "NEW DEAD"), x -> Math.max(0, x)));
-            int num_confirmed = (int) tt.numberColumn("CONFIRMED").max();
-            figures.add(TableUtils.timeSeriesPlot(tt,
-                    "DT",
-                    new String[][]{cumul_col_names,
-                            {"NEW CONFIRMED", "NEW DEAD"}},
-                    new ScatterTrace.Mode[][]{{ScatterTrace.Mode.LINE_AND_MARKERS, ScatterTrace.Mode.LINE_AND_MARKERS, ScatterTrace.Mode.LINE_AND_MARKERS, ScatterTrace.Mode.LINE_AND_MARKERS},
-                            {ScatterTrace.Mode.LINE_AND_MARKERS, ScatterTrace.Mode.LINE_AND_MARKERS}},
-                    counter + ". " + region + ": " + String.format("%,d", num_confirmed) + " CONFIRMED",
-                    new String[]{"TOTAL CASES", "NEW CASES"}));
-            counter++;
+        return download_page(null).toHtml();
+    }
+
+    /**
+     * Melts a JHU time series, only reprocessing the dates after the store's trailing window when a store is given.
+     */
+    public static Table toTimeSeries(@Nullable SeriesStore store, Table raw, String valueName) throws IOException {
+        try (RunReport.Stage stage = RunReport.stage("reshape", valueName)) {
+            Table t = store == null
+                    ? toTimeSeries(raw, valueName)
+                    : store.update("global_" + valueName.toLowerCase(), Arrays.asList(regionNames(raw)), (stored, from) -> toTimeSeries(raw, valueName, from));
+            stage.rows(t.rowCount());
+            return t;
         }
+    }
 
+    /**
+     * Full outer join of the melted confirmed, dead and recovered series on (REGION, DT), restricted to rows with
+     * confirmed cases and sorted on DT, with ACTIVE = CONFIRMED - RECOVERED - DEAD. Missing values are NaN.
+     * <p>
+     * The series come from {@link #toTimeSeries} and usually share the same (REGION, DT) grid row by row; they are then
+     * aligned by position. Otherwise (e.g. recovered reported per country while confirmed is per province) the cells are
+     * matched on a primitive (region id, day) hash. The output is ordered by a counting sort on the day, which keeps the
+     * input order within a day, and ACTIVE is computed while the columns are written.
+     */
+    public static Table joinSeries(Table confirmed, Table dead, Table recovered) {
+        try (RunReport.Stage stage = RunReport.stage("join", null)) {
+            Table[] inputs = {confirmed, dead, recovered};
+            StringColumn confirmedRegions = confirmed.stringColumn("REGION");
+            DateColumn confirmedDates = confirmed.dateColumn("DT");
+            boolean aligned = sameGrid(confirmed, dead) && sameGrid(confirmed, recovered);
+
+            // cells: one per distinct (region, day), in order of first appearance
+            List<String> regions = new ArrayList<>();
+            int cells;
+            int[] cellRegion;
+            int[] cellDay;
+            double[][] cellValues = new double[3][];
+            if (aligned) {
+                cells = confirmed.rowCount();
+                cellRegion = new int[cells];
+                cellDay = new int[cells];
+                Map<String, Integer> regionIds = new HashMap<>();
+                for (int r = 0; r < cells; r++) {
+                    cellRegion[r] = regionIds.computeIfAbsent(confirmedRegions.get(r), n -> {
+                        regions.add(n);
+                        return regions.size() - 1;
+                    });
+                    cellDay[r] = (int) PackedLocalDate.toEpochDay(confirmedDates.getIntInternal(r));
+                }
+                for (int i = 0; i < 3; i++) {
+                    cellValues[i] = ((NumericColumn<?>) inputs[i].column(2)).asDoubleArray();
+                }
+            } else {
+                Map<String, Integer> regionIds = new HashMap<>();
+                Long2IntOpenHashMap cellIds = new Long2IntOpenHashMap(confirmed.rowCount());
+                cellIds.defaultReturnValue(-1);
+                int capacity = confirmed.rowCount() + 16;
+                cellRegion = new int[capacity];
+                cellDay = new int[capacity];
+                for (int i = 0; i < 3; i++) {
+                    cellValues[i] = new double[capacity];
+                }
+                cells = 0;
+                for (int i = 0; i < 3; i++) {
+                    StringColumn regionCol = inputs[i].stringColumn("REGION");
+                    DateColumn dateCol = inputs[i].dateColumn("DT");
+                    NumericColumn<?> valueCol = (NumericColumn<?>) inputs[i].column(2);
+                    for (int r = 0; r < inputs[i].rowCount(); r++) {
+                        int region = regionIds.computeIfAbsent(regionCol.get(r), n -> {
+                            regions.add(n);
+                            return regions.size() - 1;
+                        });
+                        int day = (int) PackedLocalDate.toEpochDay(dateCol.getIntInternal(r));
+                        long key = (long) region << 32 | (day & 0xFFFFFFFFL);
+                        int cell = cellIds.get(key);
+                        if (cell < 0) {
+                            if (cells == cellRegion.length) {
+                                int grown = cells * 2;
+                                cellRegion = Arrays.copyOf(cellRegion, grown);
+                                cellDay = Arrays.copyOf(cellDay, grown);
+                                for (int j = 0; j < 3; j++) {
+                                    cellValues[j] = Arrays.copyOf(cellValues[j], grown);
+                                }
+                            }
+                            cell = cells++;
+                            cellIds.put(key, cell);
+                            cellRegion[cell] = region;
+                            cellDay[cell] = day;
+                            for (int j = 0; j < 3; j++) {
+                                cellValues[j][cell] = Double.NaN;
+                            }
+                        }
+                        cellValues[i][cell] = valueCol.getDouble(r);
+                    }
+                }
+            }
 
-        return WebUtils.toHtml("<p>Global COVID-19 cases followed by 75 regions with highest number of confirmed cases.</p>" +
-                        "<p>" +
-                        "Source:  Johns Hopkins Coronavirus Resource Center published <a target=\"_blank\" href=\"https://github.com/CSSEGISandData/2019-nCoV\">here</a> (updated daily)." + "</p>" +
-                        "<p>" +
-                        "Last reported date: " + t.dateColumn("DT").max() + ". Page updated " + Instant.ofEpochMilli(System.currentTimeMillis()).atZone(ZoneId.of("UTC")) + "." + "</p>" +
-                        "<p>" +
-                        modelLinks() + "</p>" +
-                        "<p>" +
-                        "<a target=\"_blank\" href=\"https://smpawlowski.github.io/covid19/ch\">[Switzerland]</a> " +
-                        "<a target=\"_blank\" href=\"https://coronavirus.jhu.edu/map.html\">[Johns Hopkins map]</a> " +
-                        "<a target=\"_blank\" href=\"https://ourworldindata.org/grapher/covid-confirmed-cases-since-100th-case\">[Our World In Data trajectories]</a> " +
-                        "<a target=\"_blank\" href=\"https://ourworldindata.org/coronavirus#confirmed-covid-19-cases-by-country\">[Our World In Data cases by country]</a> " + "</p>" +
-                        "<div class=\"share-page\">\n" +
-                        "    Share &rarr; " +
-                        "    <a target=\"_blank\" href=\"https://twitter.com/intent/tweet?url=https://smpawlowski.github.io/covid19/\">[Twitter]</a> " +
-                        "    <a target=\"_blank\" href=\"https://www.facebook.com/sharer/sharer.php?u=https%3A%2F%2Fsmpawlowski.github.io%2Fcovid19%2F&amp;src=sdkpreparse\" class=\"fb-xfbml-parse-ignore\">[Facebook]</a> " +
-                        "    <a target=\"_blank\" href=\"https://www.linkedin.com/shareArticle?mini=true&url=https://smpawlowski.github.io/covid19/\">[LinkedIn]</a> " +
-                        "</div>",
-                figures.toArray(new Figure[0]));
+            // counting sort of the cells with confirmed cases on the day
+            int minDay = Integer.MAX_VALUE;
+            int maxDay = Integer.MIN_VALUE;
+            int rows = 0;
+            for (int c = 0; c < cells; c++) {
+                if (cellValues[0][c] > 0) {
+                    minDay = Math.min(minDay, cellDay[c]);
+                    maxDay = Math.max(maxDay, cellDay[c]);
+                    rows++;
+                }
+            }
+            int[] start = new int[rows == 0 ? 1 : maxDay - minDay + 2];
+            for (int c = 0; c < cells; c++) {
+                if (cellValues[0][c] > 0) start[cellDay[c] - minDay + 1]++;
+            }
+            for (int d = 1; d < start.length; d++) {
+                start[d] += start[d - 1];
+            }
+
+            String[] regionOut = new String[rows];
+            DateColumn dateOut = DateColumn.create("DT", rows);
+            double[] confirmedOut = new double[rows];
+            double[] deadOut = new double[rows];
+            double[] recoveredOut = new double[rows];
+            double[] activeOut = new double[rows];
+            for (int c = 0; c < cells; c++) {
+                double cases = cellValues[0][c];
+                if (!(cases > 0)) continue;
+                int row = start[cellDay[c] - minDay]++;
+                regionOut[row] = regions.get(cellRegion[c]);
+                dateOut.set(row, PackedLocalDate.pack(LocalDate.ofEpochDay(cellDay[c])));
+                confirmedOut[row] = cases;
+                deadOut[row] = cellValues[1][c];
+                recoveredOut[row] = cellValues[2][c];
+                activeOut[row] = cases - recoveredOut[row] - deadOut[row];
+            }
+            Table t = Table.create(StringColumn.create("REGION", regionOut),
+                    dateOut,
+                    DoubleColumn.create(confirmed.column(2).name(), confirmedOut),
+                    DoubleColumn.create(dead.column(2).name(), deadOut),
+                    DoubleColumn.create(recovered.column(2).name(), recoveredOut),
+                    DoubleColumn.create("ACTIVE", activeOut));
+            stage.rows(t.rowCount());
+            return t;
+        }
+    }
+
+    /**
+     * True if {@code a} and {@code b} have the same REGION and DT on every row.
+     */
+    private static boolean sameGrid(Table a, Table b) {
+        if (a.rowCount() != b.rowCount()) return false;
+        StringColumn regionA = a.stringColumn("REGION");
+        StringColumn regionB = b.stringColumn("REGION");
+        DateColumn dateA = a.dateColumn("DT");
+        DateColumn dateB = b.dateColumn("DT");
+        for (int r = 0; r < a.rowCount(); r++) {
+            if (dateA.getIntInternal(r) != dateB.getIntInternal(r) || !regionA.get(r).equals(regionB.get(r))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param store when not null, the melted time series are updated incrementally in this store
+     */
+    @NotNull
+    public static HtmlPage download_page(@Nullable SeriesStore store) throws IOException {
+        return ChartEngine.page(Datasets.JHU_GLOBAL, store);
+    }
+
+    public static String pageBody(LocalDate lastDate) {
+        return "<p>Global COVID-19 cases followed by 75 regions with highest number of confirmed cases.</p>" +
+                "<p>" +
+                "Source:  Johns Hopkins Coronavirus Resource Center published <a target=\"_blank\" href=\"https://github.com/CSSEGISandData/2019-nCoV\">here</a> (updated daily)." + "</p>" +
+                "<p>" +
+                "Last reported date: " + lastDate + ". Page updated " + Instant.ofEpochMilli(System.currentTimeMillis()).atZone(ZoneId.of("UTC")) + "." + "</p>" +
+                "<p>" +
+                modelLinks() + "</p>" +
+                "<p>" +
+                "<a target=\"_blank\" href=\"https://smpawlowski.github.io/covid19/ch\">[Switzerland]</a> " +
+                "<a target=\"_blank\" href=\"https://coronavirus.jhu.edu/map.html\">[Johns Hopkins map]</a> " +
+                "<a target=\"_blank\" href=\"https://ourworldindata.org/grapher/covid-confirmed-cases-since-100th-case\">[Our World In Data trajectories]</a> " +
+                "<a target=\"_blank\" href=\"https://ourworldindata.org/coronavirus#confirmed-covid-19-cases-by-country\">[Our World In Data cases by country]</a> " + "</p>" +
+                "<div class=\"share-page\">\n" +
+                "    Share &rarr; " +
+                "    <a target=\"_blank\" href=\"https://twitter.com/intent/tweet?url=https://smpawlowski.github.io/covid19/\">[Twitter]</a> " +
+                "    <a target=\"_blank\" href=\"https://www.facebook.com/sharer/sharer.php?u=https%3A%2F%2Fsmpawlowski.github.io%2Fcovid19%2F&amp;src=sdkpreparse\" class=\"fb-xfbml-parse-ignore\">[Facebook]</a> " +
+                "    <a target=\"_blank\" href=\"https://www.linkedin.com/shareArticle?mini=true&url=https://smpawlowski.github.io/covid19/\">[LinkedIn]</a> " +
+                "</div>";
     }
 
     @NotNull
@@ -268,11 +494,16 @@ public class Covid19Charts {
         return "<a target=\"_blank\" href=\"https://github.com/smpawlowski/covid19\">[Code on Github]</a>";
     }
 
-    public static void main(String[] args) throws IOException {
-        String html = download_html_charts();
+    /**
+     * Downloads the data and writes the global page to {@code path}, recording the run in a {@link RunReport}.
+     */
+    public static void update_page(Path path, @Nullable SeriesStore store) throws IOException {
+        ChartEngine.update(Datasets.JHU_GLOBAL, path, store);
+    }
 
+    public static void main(String[] args) throws IOException {
         final Path path = Paths.get(args.length == 0 ? "C:/temp/index.html" : args[0]);
-        Files.write(path, html.getBytes());
+        update_page(path, args.length > 1 ? new SeriesStore(Paths.get(args[1])) : null);
         if (args.length == 0) Desktop.getDesktop().open(path.toFile());
     }
 
@@ -0,0 +1,479 @@
+package charts;
+
+import tech.tablesaw.api.DateColumn;
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.IntColumn;
+import tech.tablesaw.api.StringColumn;
+import tech.tablesaw.api.Table;
+import tech.tablesaw.columns.Column;
+import tech.tablesaw.columns.dates.DateColumnType;
+import tech.tablesaw.columns.dates.PackedLocalDate;
+import tech.tablesaw.columns.numbers.IntColumnType;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * The columns a CSV source is read with, and their types. Replaces Tablesaw's type inference (which samples rows and
+ * materializes every column) for sources with a known layout: the input is streamed once, columns that are not
+ * declared are skipped without building their values, and the declared ones are parsed straight into primitive arrays
+ * presized from the file size. A row with the wrong number of fields is skipped, a value that does not parse as its
+ * type is read as missing; both are reported in the {@link Result} instead of failing the read.
+ * <p>
+ * Columns are matched on the header, so the output has the declared columns in file order. A declared column missing
+ * from the header fails the read, since every use of the table would fail later.
+ */
+public class CsvSchema {
+
+	public enum Type {STRING, INT, DOUBLE, DATE}
+
+	/**
+	 * Reported malformed rows are listed up to this number, the rest are only counted.
+	 */
+	public static final int MAX_LISTED_PROBLEMS = 20;
+
+	private static final int MISSING_INT  = IntColumnType.missingValueIndicator();
+	private static final int MISSING_DATE = DateColumnType.missingValueIndicator();
+
+	private static final int END_OF_FIELD = 0;
+	private static final int END_OF_ROW   = 1;
+	private static final int END_OF_INPUT = 2;
+
+	private static class Spec {
+		final String            name;
+		final Predicate<String> matches;
+		final Type              type;
+		final DateTimeFormatter format;
+
+		Spec(String name, Predicate<String> matches, Type type, DateTimeFormatter format) {
+			this.name = name;
+			this.matches = matches;
+			this.type = type;
+			this.format = format;
+		}
+	}
+
+	private final List<Spec> specs = new ArrayList<>();
+	private final char       separator;
+
+	public CsvSchema() {
+		this(',');
+	}
+
+	public CsvSchema(char separator) {
+		this.separator = separator;
+	}
+
+	public CsvSchema string(String column) {
+		return add(column, Type.STRING, null);
+	}
+
+	public CsvSchema integer(String column) {
+		return add(column, Type.INT, null);
+	}
+
+	public CsvSchema decimal(String column) {
+		return add(column, Type.DOUBLE, null);
+	}
+
+	public CsvSchema date(String column, String pattern) {
+		return add(column, Type.DATE, DateTimeFormatter.ofPattern(pattern));
+	}
+
+	/**
+	 * Every column whose header matches, e.g. the date columns of a wide file; there may be none.
+	 */
+	public CsvSchema integers(Predicate<String> columns) {
+		specs.add(new Spec(null, columns, Type.INT, null));
+		return this;
+	}
+
+	private CsvSchema add(String column, Type type, DateTimeFormatter format) {
+		specs.add(new Spec(column, column::equals, type, format));
+		return this;
+	}
+
+	/**
+	 * The table read with a schema and the rows that did not fit it.
+	 */
+	public static class Result {
+		public final Table        table;
+		public final int          malformedRows;
+		public final List<String> problems;
+
+		Result(Table table, int malformedRows, List<String> problems) {
+			this.table = table;
+			this.malformedRows = malformedRows;
+			this.problems = problems;
+		}
+
+		@Override
+		public String toString() {
+			return table.name() + ": " + malformedRows + " malformed rows" + (problems.isEmpty() ? "" : ", " + String.join("; ", problems));
+		}
+	}
+
+	public Result read(Path file, String tableName) throws IOException {
+		try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			return read(in, tableName, Files.size(file));
+		}
+	}
+
+	/**
+	 * @param sizeHint input size in chars (or bytes), used to presize the columns; 0 if unknown
+	 */
+	public Result read(Reader in, String tableName, long sizeHint) throws IOException {
+		return new Parser(in, tableName, sizeHint).parse();
+	}
+
+	/**
+	 * One column of the output, filled while parsing.
+	 */
+	private static class Target {
+		final String            name;
+		final Type              type;
+		final DateTimeFormatter format;
+		int[]                   ints;
+		double[]                doubles;
+		String[]                strings;
+		Map<String, String>     interned;
+		Map<String, Integer>    dates;
+
+		Target(String name, Type type, DateTimeFormatter format, int capacity) {
+			this.name = name;
+			this.type = type;
+			this.format = format;
+			switch (type) {
+				case INT:
+					ints = new int[capacity];
+					break;
+				case DATE:
+					ints = new int[capacity];
+					dates = new HashMap<>();
+					break;
+				case DOUBLE:
+					doubles = new double[capacity];
+					break;
+				default:
+					strings = new String[capacity];
+					interned = new HashMap<>();
+			}
+		}
+
+		void grow(int capacity) {
+			if (ints != null) ints = Arrays.copyOf(ints, capacity);
+			if (doubles != null) doubles = Arrays.copyOf(doubles, capacity);
+			if (strings != null) strings = Arrays.copyOf(strings, capacity);
+		}
+
+		Column<?> toColumn(int rows) {
+			switch (type) {
+				case INT:
+					return IntColumn.create(name, Arrays.copyOf(ints, rows));
+				case DOUBLE:
+					return DoubleColumn.create(name, Arrays.copyOf(doubles, rows));
+				case DATE:
+					DateColumn c = DateColumn.create(name, rows);
+					for (int r = 0; r < rows; r++) c.set(r, ints[r]);
+					return c;
+				default:
+					return StringColumn.create(name, Arrays.copyOf(strings, rows));
+			}
+		}
+	}
+
+	private class Parser {
+		private final Reader       in;
+		private final String       tableName;
+		private final long         sizeHint;
+		private final char[]       buf      = new char[1 << 16];
+		private int                pos, limit;
+		private char[]             field    = new char[64];
+		private int                length;
+		private final List<String> problems = new ArrayList<>();
+		private int                malformed;
+		private boolean            rowProblem;
+
+		Parser(Reader in, String tableName, long sizeHint) {
+			this.in = in;
+			this.tableName = tableName;
+			this.sizeHint = sizeHint;
+		}
+
+		Result parse() throws IOException {
+			List<String> header = new ArrayList<>();
+			int          end;
+			do {
+				end = next(true);
+				header.add(text());
+			} while (end == END_OF_FIELD);
+			if (header.get(0).startsWith("\uFEFF")) header.set(0, header.get(0).substring(1));
+
+			// header length approximates the length of a row, good enough to presize both wide and long files
+			int          capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(16, sizeHint / Math.max(16, String.join(",", header).length()) + 16));
+			Target[]     targets  = new Target[header.size()];
+			List<Target> order    = new ArrayList<>();
+			for (Spec s : specs) {
+				boolean found = false;
+				for (int f = 0; f < header.size(); f++) {
+					if (targets[f] == null && s.matches.test(header.get(f))) {
+						targets[f] = new Target(header.get(f), s.type, s.format, capacity);
+						found = true;
+						if (s.name != null) break;
+					}
+				}
+				if (!found && s.name != null) throw new IOException("No column " + s.name + " in " + tableName + " header " + header);
+			}
+			for (Target t : targets) {
+				if (t != null) order.add(t);
+			}
+
+			int rows = 0;
+			for (int line = 2; end != END_OF_INPUT; line++) {
+				if (rows == capacity) {
+					capacity = (int) Math.min(Integer.MAX_VALUE - 8, capacity + (capacity >> 1) + 1L);
+					for (Target t : order) t.grow(capacity);
+				}
+				int f = 0;
+				rowProblem = false;
+				do {
+					boolean keep = f < targets.length && targets[f] != null;
+					end = next(keep);
+					if (keep) store(targets[f], rows, line);
+					f++;
+				} while (end == END_OF_FIELD);
+				if (f == 1 && length == 0) continue; // blank line
+				if (f != header.size()) {
+					malformed++;
+					problem(line, "expected " + header.size() + " fields, found " + f + "; row skipped");
+					continue;
+				}
+				if (rowProblem) malformed++;
+				rows++;
+			}
+			Table t = Table.create(tableName);
+			for (Target target : order) t.addColumns(target.toColumn(rows));
+			return new Result(t, malformed, problems);
+		}
+
+		private void store(Target t, int row, int line) {
+			switch (t.type) {
+				case INT:
+					t.ints[row] = parseInt(t, line);
+					break;
+				case DOUBLE:
+					String d = text();
+					try {
+						t.doubles[row] = d.isEmpty() ? Double.NaN : Double.parseDouble(d);
+					} catch (NumberFormatException e) {
+						t.doubles[row] = Double.NaN;
+						invalid(line, t, d, "a number");
+					}
+					break;
+				case DATE:
+					String s = text();
+					Integer packed = t.dates.get(s);
+					if (packed == null) {
+						try {
+							packed = s.isEmpty() ? MISSING_DATE : PackedLocalDate.pack(LocalDate.parse(s, t.format));
+							t.dates.put(s, packed);
+						} catch (DateTimeParseException e) {
+							packed = MISSING_DATE;
+							invalid(line, t, s, "a date");
+						}
+					}
+					t.ints[row] = packed;
+					break;
+				default:
+					String v = new String(field, 0, length);
+					String u = t.interned.putIfAbsent(v, v);
+					t.strings[row] = u != null ? u : v;
+			}
+		}
+
+		/**
+		 * Parses the field in place; "12.0" is accepted as 12, a fraction or an overflow is malformed.
+		 */
+		private int parseInt(Target t, int line) {
+			int from = 0, to = length;
+			while (from < to && field[from] <= ' ') from++;
+			while (to > from && field[to - 1] <= ' ') to--;
+			if (from == to) return MISSING_INT;
+			boolean negative = field[from] == '-';
+			int     i        = negative || field[from] == '+' ? from + 1 : from;
+			long    value    = 0;
+			for (; i < to && value <= Integer.MAX_VALUE; i++) {
+				char c = field[i];
+				if (c < '0' || c > '9') break;
+				value = value * 10 + (c - '0');
+			}
+			if (i < to || i == from + (negative ? 1 : 0) || value > Integer.MAX_VALUE) {
+				String s = text();
+				try {
+					double x = Double.parseDouble(s);
+					if (x == Math.rint(x) && Math.abs(x) < Integer.MAX_VALUE) return (int) x;
+				} catch (NumberFormatException e) {
+					// reported below
+				}
+				invalid(line, t, s, "an int");
+				return MISSING_INT;
+			}
+			return (int) (negative ? -value : value);
+		}
+
+		private String text() {
+			return new String(field, 0, length).trim();
+		}
+
+		private void invalid(int line, Target t, String value, String what) {
+			rowProblem = true;
+			problem(line, t.name + " '" + value + "' is not " + what + "; read as missing");
+		}
+
+		private void problem(int line, String message) {
+			if (problems.size() < MAX_LISTED_PROBLEMS) problems.add("row " + line + ": " + message);
+		}
+
+		/**
+		 * Reads one field, into {@link #field} if {@code keep}; returns what ended it.
+		 */
+		private int next(boolean keep) throws IOException {
+			length = 0;
+			// a quote opens a quoted value only as the first character of the field, kept or not
+			boolean atStart = true, inQuotes = false;
+			while (true) {
+				if (pos == limit) {
+					limit = in.read(buf, 0, buf.length);
+					pos = 0;
+					if (limit <= 0) {
+						limit = 0;
+						return END_OF_INPUT;
+					}
+				}
+				char c = buf[pos++];
+				if (inQuotes) {
+					if (c == '"') {
+						if (peek() == '"') {
+							pos++;
+							if (keep) append(c);
+						} else inQuotes = false;
+					} else if (keep) append(c);
+				} else if (c == separator) {
+					return END_OF_FIELD;
+				} else if (c == '\n') {
+					return END_OF_ROW;
+				} else if (c == '\r') {
+					if (peek() == '\n') pos++;
+					return END_OF_ROW;
+				} else if (c == '"' && atStart) {
+					atStart = false;
+					inQuotes = true;
+				} else {
+					atStart = false;
+					if (keep) append(c);
+				}
+			}
+		}
+
+		private int peek() throws IOException {
+			if (pos == limit) {
+				limit = in.read(buf, 0, buf.length);
+				pos = 0;
+				if (limit <= 0) {
+					limit = 0;
+					return -1;
+				}
+			}
+			return buf[pos];
+		}
+
+		private void append(char c) {
+			if (length == field.length) field = Arrays.copyOf(field, length * 2);
+			field[length++] = c;
+		}
+	}
+
+	/**
+	 * Reads a generated JHU-like wide file with both Tablesaw and a schema and checks the values are the same (the
+	 * skipped Long column has values with a quote inside, which must not open a quoted value), checks that malformed
+	 * rows are reported, then compares parse time and allocated bytes of the two readers. Usage:
+	 * {@code TestAgainstTablesaw [<regions> <days>]}, 3000 x 600 by default.
+	 */
+	private static class TestAgainstTablesaw {
+		public static void main(String[] args) throws IOException {
+			int  regions = args.length > 0 ? Integer.parseInt(args[0]) : 3000;
+			int  days    = args.length > 1 ? Integer.parseInt(args[1]) : 600;
+			Path file    = Files.createTempFile("jhu", ".csv");
+			try {
+				java.util.Random  random  = new java.util.Random(7);
+				DateTimeFormatter header  = DateTimeFormatter.ofPattern("M/d/yy");
+				StringBuilder     csv     = new StringBuilder("Province/State,Country/Region,Lat,Long");
+				for (int d = 0; d < days; d++) csv.append(',').append(LocalDate.of(2020, 1, 22).plusDays(d).format(header));
+				for (int r = 0; r < regions; r++) {
+					csv.append('\n').append(r % 3 == 0 ? "\"Province " + r + ", \"\"North\"\"\"" : "").append(",Country ").append(r / 3)
+					   .append(',').append(random.nextDouble() * 90).append(',').append(r % 7 == 0 ? "12\"3" : String.valueOf(random.nextDouble() * 180));
+					for (int d = 0, v = 0; d < days; d++) csv.append(',').append(v += random.nextInt(100));
+				}
+				csv.append('\n');
+				Files.write(file, csv.toString().getBytes(StandardCharsets.UTF_8));
+				CsvSchema schema = new CsvSchema().string("Province/State").string("Country/Region").integers(h -> h.matches("\\d+/\\d+/\\d+"));
+
+				Table expected = Table.read().csv(file.toFile());
+				Table actual   = schema.read(file, "jhu").table;
+				if (actual.columnCount() != days + 2) throw new IllegalStateException(actual.columnCount() + " columns");
+				for (int c = 0; c < actual.columnCount(); c++) {
+					Column<?> e = expected.column(c < 2 ? c : c + 2);
+					if (!e.name().equals(actual.column(c).name()) || !e.asList().equals(actual.column(c).asList()))
+						throw new IllegalStateException("Column " + e.name() + " differs");
+				}
+
+				Result malformed = schema.read(new java.io.StringReader("Province/State,Country/Region,Lat,1/22/20,1/23/20\n" +
+				                                                         ",A,1.5,1,2\n" +
+				                                                         ",B,1.5,x,2.0\n" +
+				                                                         ",C,1.5,3\n" +
+				                                                         "\"D, E\",D,0,4,5"), "malformed", 0);
+				Table m = malformed.table;
+				if (malformed.malformedRows != 2 || malformed.problems.size() != 2 || m.rowCount() != 3
+				    || !m.intColumn("1/22/20").isMissing(1) || m.intColumn("1/23/20").getInt(1) != 2 || !m.stringColumn(0).get(2).equals("D, E"))
+					throw new IllegalStateException("Malformed rows: " + malformed + "\n" + m);
+
+				for (int round = 0; round < 3; round++) {
+					long[] tablesaw = measure(() -> Table.read().csv(file.toFile()));
+					long[] typed    = measure(() -> schema.read(file, "jhu").table);
+					System.out.printf("%,d x %,d (%,d bytes): Tablesaw %,d ms, %,d MB allocated; schema %,d ms, %,d MB allocated%n",
+							regions, days, Files.size(file), tablesaw[0], tablesaw[1] >> 20, typed[0], typed[1] >> 20);
+				}
+			} finally {
+				Files.delete(file);
+			}
+			System.out.println("Schema read matches Tablesaw, malformed rows are reported");
+		}
+
+		private interface Read {
+			Table read() throws IOException;
+		}
+
+		/**
+		 * Milliseconds and bytes allocated by the current thread to read the file once.
+		 */
+		private static long[] measure(Read read) throws IOException {
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+			long bytes = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+			long start = System.nanoTime();
+			if (read.read().rowCount() == 0) throw new IllegalStateException("No rows");
+			return new long[]{(System.nanoTime() - start) / 1_000_000, threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - bytes};
+		}
+	}
+}
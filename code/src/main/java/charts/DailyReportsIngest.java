@@ -0,0 +1,389 @@
+package charts;
+
+import org.jetbrains.annotations.Nullable;
+import tech.tablesaw.api.DateColumn;
+import tech.tablesaw.api.IntColumn;
+import tech.tablesaw.api.NumericColumn;
+import tech.tablesaw.api.StringColumn;
+import tech.tablesaw.api.Table;
+import tech.tablesaw.columns.Column;
+import tech.tablesaw.columns.dates.PackedLocalDate;
+import tech.tablesaw.columns.numbers.IntColumnType;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Ingest of the JHU daily reports (one CSV per day since 2020-01-22) into a long REGION, DT, CONFIRMED, DEAD,
+ * RECOVERED, ACTIVE table with province level detail.
+ * <ul>
+ * <li>All days are fetched and parsed concurrently on the {@link SourceCache} pool.</li>
+ * <li>The reports changed their header several times (Province/State vs Province_State, county level Admin2 rows,
+ * ...); each header variant is mapped to a {@link Schema} once. Rows of the same region on a day (e.g. the counties of
+ * a US state) are summed.</li>
+ * <li>Each day becomes a {@link Batch} of primitive columns; the batches are concatenated once at the end.</li>
+ * <li>With a checkpoint directory, every completed day older than {@link #IMMUTABLE_AFTER_DAYS} days is saved as a
+ * {@link TableSnapshot}, so an interrupted or failed run resumes with the days it has not completed yet.</li>
+ * </ul>
+ * A report that cannot be read fails the ingest, since a missing day would show as a dip of all totals, except for the
+ * last days, whose reports may not be published yet.
+ */
+public class DailyReportsIngest {
+
+	public static final String    URL   = "https://raw.githubusercontent.com/CSSEGISandData/COVID-19/master/csse_covid_19_data/csse_covid_19_daily_reports/";
+	public static final LocalDate START = LocalDate.of(2020, 1, 22);
+
+	/**
+	 * Reports older than this are no longer revised: they are not requested again once cached and are checkpointed.
+	 */
+	public static final int IMMUTABLE_AFTER_DAYS = 3;
+
+	private static final int CHECKPOINT_VERSION = 1;
+
+	private static final Map<List<String>, Schema> SCHEMAS = new ConcurrentHashMap<>();
+
+	private static final int MISSING = IntColumnType.missingValueIndicator();
+
+	private final SourceCache cache;
+	@Nullable
+	private final Path        checkpoints;
+	private final String      baseUrl;
+
+	/**
+	 * @param checkpoints directory of the per-day checkpoints, null to always process all days
+	 */
+	public DailyReportsIngest(SourceCache cache, @Nullable Path checkpoints) {
+		this(cache, checkpoints, URL);
+	}
+
+	/**
+	 * @param baseUrl location of the MM-dd-yyyy.csv reports, e.g. a mirror
+	 */
+	public DailyReportsIngest(SourceCache cache, @Nullable Path checkpoints, String baseUrl) {
+		this.cache = cache;
+		this.checkpoints = checkpoints;
+		this.baseUrl = baseUrl;
+	}
+
+	/**
+	 * Positions of the used columns in one variant of the report header.
+	 */
+	static class Schema {
+		final int   country;
+		final int   province;
+		final int[] values;
+
+		private Schema(List<String> header) {
+			country = required(header, find(header, "COUNTRY", true), "Country");
+			province = find(header, "PROVINCE", true);
+			values = new int[]{required(header, find(header, "CONFIRMED", false), "Confirmed"),
+			                   required(header, find(header, "DEATHS", false), "Deaths"),
+			                   find(header, "RECOVERED", false)};
+		}
+
+		static Schema of(List<String> header) {
+			return SCHEMAS.computeIfAbsent(header, Schema::new);
+		}
+
+		private static int find(List<String> header, String name, boolean prefix) {
+			for (int c = 0; c < header.size(); c++) {
+				String h = header.get(c).trim().toUpperCase();
+				if (prefix ? h.startsWith(name) : h.equals(name)) return c;
+			}
+			return -1;
+		}
+
+		private static int required(List<String> header, int column, String name) {
+			if (column < 0) throw new IllegalArgumentException("No " + name + " column in report header " + header);
+			return column;
+		}
+	}
+
+	/**
+	 * The regions of one day and their CONFIRMED, DEAD and RECOVERED values (missing values as in an IntColumn).
+	 */
+	static class Batch {
+		final LocalDate day;
+		final String[]  regions;
+		final int[][]   values;
+
+		Batch(LocalDate day, String[] regions, int[][] values) {
+			this.day = day;
+			this.regions = regions;
+			this.values = values;
+		}
+
+		int size() {
+			return regions.length;
+		}
+
+		/**
+		 * Region ("Country" or "Country: Province") values of a report, summed over the rows of each region.
+		 */
+		static Batch of(LocalDate day, Table report) {
+			Schema      s         = Schema.of(report.columnNames());
+			Column<?>   country   = report.column(s.country);
+			Column<?>   province  = s.province < 0 ? null : report.column(s.province);
+			Column<?>[] valueCols = new Column<?>[s.values.length];
+			for (int k = 0; k < valueCols.length; k++) {
+				valueCols[k] = s.values[k] < 0 ? null : report.column(s.values[k]);
+			}
+
+			// region ids by country, then province, so that the name is only built once per region
+			Map<String, Map<String, Integer>> ids     = new HashMap<>();
+			List<String>                      regions = new ArrayList<>();
+			int[][]                           values  = new int[valueCols.length][report.rowCount()];
+			for (int[] v : values) Arrays.fill(v, MISSING);
+			for (int r = 0; r < report.rowCount(); r++) {
+				String c = country.getString(r).trim();
+				String p = province == null ? "" : province.getString(r).trim();
+				int id = ids.computeIfAbsent(c, x -> new HashMap<>()).computeIfAbsent(p, x -> {
+					regions.add(p.isEmpty() || p.equals(c) ? c : c + ": " + p);
+					return regions.size() - 1;
+				});
+				for (int k = 0; k < valueCols.length; k++) {
+					int x = valueCols[k] == null ? MISSING : value(valueCols[k], r);
+					if (x == MISSING) continue;
+					values[k][id] = values[k][id] == MISSING ? x : values[k][id] + x;
+				}
+			}
+			for (int k = 0; k < values.length; k++) {
+				values[k] = Arrays.copyOf(values[k], regions.size());
+			}
+			return new Batch(day, regions.toArray(new String[0]), values);
+		}
+
+		private static int value(Column<?> c, int r) {
+			if (c instanceof NumericColumn) {
+				double x = ((NumericColumn<?>) c).getDouble(r);
+				return Double.isNaN(x) ? MISSING : (int) x;
+			}
+			String s = c.getString(r).trim();
+			if (s.isEmpty()) return MISSING;
+			try {
+				return (int) Double.parseDouble(s);
+			} catch (NumberFormatException e) {
+				return MISSING;
+			}
+		}
+
+		Table toTable() {
+			return Table.create(day.toString(),
+					StringColumn.create("REGION", regions),
+					IntColumn.create("CONFIRMED", values[0]),
+					IntColumn.create("DEAD", values[1]),
+					IntColumn.create("RECOVERED", values[2]));
+		}
+
+		static Batch fromTable(LocalDate day, Table t) {
+			return new Batch(day,
+					t.stringColumn("REGION").asObjectArray(),
+					new int[][]{ints(t.intColumn("CONFIRMED")), ints(t.intColumn("DEAD")), ints(t.intColumn("RECOVERED"))});
+		}
+
+		private static int[] ints(IntColumn c) {
+			int[] values = new int[c.size()];
+			for (int r = 0; r < values.length; r++) {
+				values[r] = c.getInt(r);
+			}
+			return values;
+		}
+	}
+
+	String url(LocalDate day) {
+		return baseUrl + day.format(DateTimeFormatter.ofPattern("MM-dd-yyyy")) + ".csv";
+	}
+
+	@Nullable
+	private Path checkpoint(LocalDate day) {
+		return checkpoints == null ? null : checkpoints.resolve("v" + CHECKPOINT_VERSION + "-" + day + ".snapshot");
+	}
+
+	/**
+	 * Ingests the reports from {@link #START} to {@code end} (inclusive); reports after {@code lastRequired} may be
+	 * missing.
+	 *
+	 * @throws IOException if a report up to {@code lastRequired} cannot be read; the completed days are checkpointed
+	 */
+	public Table load(LocalDate end, LocalDate lastRequired) throws IOException {
+		LocalDate           immutableBefore = LocalDate.now().minusDays(IMMUTABLE_AFTER_DAYS);
+		List<LocalDate>     days            = new ArrayList<>();
+		List<Future<Batch>> batches         = new ArrayList<>();
+		int                 resumed         = 0;
+		for (LocalDate day = START; !day.isAfter(end); day = day.plusDays(1)) {
+			LocalDate d          = day;
+			boolean   immutable  = d.isBefore(immutableBefore);
+			Path      checkpoint = immutable ? checkpoint(d) : null;
+			days.add(d);
+			if (checkpoint != null && Files.exists(checkpoint)) {
+				batches.add(cache.submit(() -> Batch.fromTable(d, TableSnapshot.read(checkpoint))));
+				resumed++;
+			} else {
+				batches.add(cache.submit(() -> fetch(d, immutable, checkpoint)));
+			}
+		}
+		if (resumed > 0) System.out.println("Daily reports: " + resumed + " of " + days.size() + " days from checkpoints");
+
+		List<Batch>  loaded   = new ArrayList<>();
+		List<String> failures = new ArrayList<>();
+		for (int i = 0; i < days.size(); i++) {
+			try {
+				loaded.add(SourceCache.get(batches.get(i)));
+			} catch (IOException | RuntimeException e) {
+				if (days.get(i).isAfter(lastRequired)) continue;
+				failures.add(days.get(i) + " (" + e + ")");
+			}
+		}
+		if (!failures.isEmpty())
+			throw new IOException("Daily reports of " + failures.size() + " day(s) could not be read: " + String.join(", ", failures));
+		return merge(loaded);
+	}
+
+	/**
+	 * {@link #load(LocalDate, LocalDate)} up to tomorrow, tolerating missing reports after the day before yesterday.
+	 */
+	public Table load() throws IOException {
+		return load(LocalDate.now().plusDays(1), LocalDate.now().minusDays(2));
+	}
+
+	private Batch fetch(LocalDate day, boolean immutable, @Nullable Path checkpoint) throws IOException {
+		Table report = cache.readCsv(url(day), immutable);
+		Batch batch;
+		try (RunReport.Stage stage = RunReport.stage("reshape", day.toString())) {
+			batch = Batch.of(day, report);
+			stage.rows(report.rowCount());
+		}
+		if (checkpoint != null) TableSnapshot.write(batch.toTable(), checkpoint);
+		return batch;
+	}
+
+	/**
+	 * Concatenates the batches into presized columns in one pass, keeping the rows with confirmed cases and computing
+	 * ACTIVE = CONFIRMED - DEAD - RECOVERED (missing if a term is missing).
+	 */
+	static Table merge(List<Batch> batches) {
+		try (RunReport.Stage stage = RunReport.stage("reshape", "merge daily reports")) {
+			int rows = 0;
+			for (Batch b : batches) {
+				for (int i = 0; i < b.size(); i++) {
+					if (b.values[0][i] > 0) rows++;
+				}
+			}
+			String[]            region    = new String[rows];
+			DateColumn          dt        = DateColumn.create("DT", rows);
+			int[]               confirmed = new int[rows];
+			int[]               dead      = new int[rows];
+			int[]               recovered = new int[rows];
+			int[]               active    = new int[rows];
+			Map<String, String> interned  = new HashMap<>();
+			int                 row       = 0;
+			for (Batch b : batches) {
+				int packed = PackedLocalDate.pack(b.day);
+				for (int i = 0; i < b.size(); i++) {
+					int c = b.values[0][i];
+					if (c <= 0) continue;
+					region[row] = interned.computeIfAbsent(b.regions[i], n -> n);
+					dt.set(row, packed);
+					confirmed[row] = c;
+					dead[row] = b.values[1][i];
+					recovered[row] = b.values[2][i];
+					active[row] = dead[row] == MISSING || recovered[row] == MISSING ? MISSING : c - dead[row] - recovered[row];
+					row++;
+				}
+			}
+			stage.rows(rows);
+			return Table.create("daily reports",
+					StringColumn.create("REGION", region),
+					dt,
+					IntColumn.create("CONFIRMED", confirmed),
+					IntColumn.create("DEAD", dead),
+					IntColumn.create("RECOVERED", recovered),
+					IntColumn.create("ACTIVE", active));
+		}
+	}
+
+	/**
+	 * Ingests ten generated reports with three header variants and county rows from a local directory, with one report
+	 * missing at first: the ingest fails, the other days are checkpointed, and once the report is there the next run
+	 * resumes from the checkpoints and gives the same table as a run without them.
+	 */
+	private static class TestResume {
+		public static void main(String[] args) throws IOException {
+			Path        tmp     = Files.createTempDirectory("daily_reports");
+			Path        reports = Files.createDirectories(tmp.resolve("reports"));
+			SourceCache cache   = new SourceCache(tmp.resolve("cache"), 4);
+			String      base    = reports.toUri().toString();
+			LocalDate   end     = START.plusDays(9);
+			LocalDate   missing = START.plusDays(5);
+			for (LocalDate day = START; !day.isAfter(end); day = day.plusDays(1)) {
+				if (!day.equals(missing)) writeReport(reports, day);
+			}
+
+			DailyReportsIngest ingest = new DailyReportsIngest(cache, tmp.resolve("checkpoints"), base);
+			try {
+				ingest.load(end, end);
+				throw new IllegalStateException("Missing report was not reported");
+			} catch (IOException e) {
+				if (!e.getMessage().contains(missing.toString())) throw e;
+				System.out.println("First run: " + e.getMessage());
+			}
+			try (Stream<Path> files = Files.list(tmp.resolve("checkpoints"))) {
+				if (files.count() != 9) throw new IllegalStateException("Completed days were not checkpointed");
+			}
+
+			writeReport(reports, missing);
+			Table resumed = ingest.load(end, end);
+			Table fresh   = new DailyReportsIngest(new SourceCache(tmp.resolve("cache2"), 4), null, base).load(end, end);
+			if (!resumed.write().toString("csv").equals(fresh.write().toString("csv")))
+				throw new IllegalStateException("Resumed run differs from a fresh run");
+			StringColumn regions = resumed.stringColumn("REGION");
+			for (String expected : new String[]{"China: Hubei", "Italy", "US: New York"}) {
+				if (!regions.contains(expected)) throw new IllegalStateException("No region " + expected + " in " + regions.unique().asList());
+			}
+			Table ny = resumed.where(regions.isEqualTo("US: New York").and(resumed.dateColumn("DT").isEqualTo(end)));
+			if (ny.rowCount() != 1 || ny.intColumn("CONFIRMED").getInt(0) != 3 * (9 + 1) || !ny.intColumn("ACTIVE").isMissing(0))
+				throw new IllegalStateException("Counties not summed: " + ny);
+			System.out.println("Resumed run: " + resumed.rowCount() + " rows, " + regions.countUnique() + " regions, same as a fresh run");
+		}
+
+		/**
+		 * Header variants as in the real reports: the first days without Recovered, then Province/State, then
+		 * Province_State with county (Admin2) rows.
+		 */
+		private static void writeReport(Path dir, LocalDate day) throws IOException {
+			int           n  = (int) (day.toEpochDay() - START.toEpochDay());
+			StringBuilder sb = new StringBuilder();
+			if (n < 3) {
+				sb.append("Province/State,Country/Region,Last Update,Confirmed,Deaths\n");
+				sb.append("Hubei,Mainland China,1/22/2020 17:00,").append(10 * (n + 1)).append(",").append(n).append("\n");
+				sb.append(",Italy,1/22/2020 17:00,").append(n + 1).append(",0\n");
+			} else if (n < 6) {
+				sb.append("Province/State,Country/Region,Last Update,Confirmed,Deaths,Recovered\n");
+				sb.append("Hubei,China,2020-02-01T12:00:00,").append(10 * (n + 1)).append(",").append(n).append(",1\n");
+				sb.append(",Italy,2020-02-01T12:00:00,").append(n + 1).append(",0,0\n");
+				sb.append("New York,US,2020-02-01T12:00:00,").append(3 * (n + 1)).append(",0,\n");
+			} else {
+				sb.append("FIPS,Admin2,Province_State,Country_Region,Last_Update,Lat,Long_,Confirmed,Deaths,Recovered,Active,Combined_Key\n");
+				sb.append(",,Hubei,China,2020-03-23 23:19:34,30.9,112.2,").append(10 * (n + 1)).append(",").append(n).append(",1,0,\"Hubei, China\"\n");
+				sb.append(",,,Italy,2020-03-23 23:19:34,41.8,12.5,").append(n + 1).append(",0,0,0,Italy\n");
+				for (String county : new String[]{"Kings", "Queens", "Bronx"}) {
+					sb.append("36047,").append(county).append(",New York,US,2020-03-23 23:19:34,40.6,-73.9,").append(n + 1).append(",0,,0,\"")
+					  .append(county).append(", New York, US\"\n");
+				}
+			}
+			Files.write(dir.resolve(day.format(DateTimeFormatter.ofPattern("MM-dd-yyyy")) + ".csv"), sb.toString().getBytes(StandardCharsets.UTF_8));
+		}
+	}
+}
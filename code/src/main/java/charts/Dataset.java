@@ -0,0 +1,235 @@
+package charts;
+
+import org.jetbrains.annotations.Nullable;
+import tech.tablesaw.api.Table;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Declaration of a data source and of the page built from it: the files to download, how they are normalized into a
+ * long REGION, DT, metrics table, and which metrics are charted. All datasets are turned into pages by the same
+ * {@link ChartEngine}; the registered ones are listed in {@link Datasets}.
+ */
+public class Dataset {
+
+	public interface Normalizer {
+		/**
+		 * Returns the long table (REGION, DT and metric columns) of the downloaded files.
+		 *
+		 * @param raw   the downloaded tables in the order of the dataset's sources, null where an optional source failed
+		 * @param store when not null, series may be updated incrementally in this store
+		 */
+		Table normalize(List<Table> raw, @Nullable SeriesStore store) throws IOException;
+	}
+
+	public interface Loader {
+		/**
+		 * Returns the long table (REGION, DT and metric columns) of a dataset that does its own downloads.
+		 *
+		 * @param store when not null, intermediate results may be kept in this store
+		 */
+		Table load(@Nullable SeriesStore store) throws IOException;
+	}
+
+	public static class Source {
+		public final String  url;
+		/**
+		 * The file is never requested again once it is cached.
+		 */
+		public final boolean immutable;
+		/**
+		 * A failed download is passed to the normalizer as null instead of failing the page.
+		 */
+		public final boolean optional;
+		/**
+		 * Columns and types the file is parsed with, see {@link CsvSchema}; null to infer them.
+		 */
+		@Nullable
+		public final CsvSchema schema;
+
+		public Source(String url, boolean immutable, boolean optional, @Nullable CsvSchema schema) {
+			this.url = url;
+			this.immutable = immutable;
+			this.optional = optional;
+			this.schema = schema;
+		}
+
+		public Source(String url, boolean immutable, boolean optional) {
+			this(url, immutable, optional, null);
+		}
+
+		public Source(String url, @Nullable CsvSchema schema) {
+			this(url, false, false, schema);
+		}
+
+		public Source(String url) {
+			this(url, false, false, null);
+		}
+	}
+
+	final String                 name;
+	final String                 fileName;
+	final Supplier<List<Source>> sources;
+	@Nullable
+	final Normalizer             normalizer;
+	@Nullable
+	final Loader                 loader;
+
+	String[]                    metrics        = {};
+	String                      rankMetric;
+	String[]                    newMetrics     = {};
+	String[]                    currentMetrics = {};
+	String                      newPrefix      = "NEW ";
+	boolean                     clampNew;
+	int                         averageDays;
+	boolean                     dropNegativeNew;
+	boolean                     summaryToCommonLastDate;
+	int                         topRegions     = Integer.MAX_VALUE;
+	String                      summaryTitle   = "";
+	String[]                    yTitles        = {"TOTAL CASES", "NEW CASES"};
+	Function<LocalDate, String> body           = lastDate -> "";
+	@Nullable
+	Downsampler                 downsampler;
+	Rollups.Resolution          resolution     = Rollups.Resolution.DAY;
+
+	/**
+	 * @param name     identifies the dataset in run reports and the series store
+	 * @param fileName name of the page written by {@link ChartEngine#main(String[])}
+	 */
+	public Dataset(String name, String fileName, Supplier<List<Source>> sources, Normalizer normalizer) {
+		this.name = name;
+		this.fileName = fileName;
+		this.sources = sources;
+		this.normalizer = normalizer;
+		this.loader = null;
+	}
+
+	/**
+	 * A dataset whose rows come from {@code loader} instead of a fixed list of sources.
+	 */
+	public Dataset(String name, String fileName, Loader loader) {
+		this.name = name;
+		this.fileName = fileName;
+		this.sources = Collections::emptyList;
+		this.normalizer = null;
+		this.loader = loader;
+	}
+
+	public String name() {
+		return name;
+	}
+
+	public String fileName() {
+		return fileName;
+	}
+
+	/**
+	 * Cumulative metrics shown on the first axis of every chart; the first one ranks the regions unless
+	 * {@link #rankBy(String)} is set.
+	 */
+	public Dataset metrics(String... metrics) {
+		this.metrics = metrics;
+		if (rankMetric == null) rankMetric = metrics[0];
+		return this;
+	}
+
+	public Dataset rankBy(String metric) {
+		this.rankMetric = metric;
+		return this;
+	}
+
+	/**
+	 * Metrics whose daily increase is shown on the second axis, as column {@code prefix + metric}.
+	 *
+	 * @param clamp if true, decreases (corrections of the cumulative numbers) are shown as 0
+	 */
+	public Dataset newMetrics(String prefix, boolean clamp, String... metrics) {
+		this.newPrefix = prefix;
+		this.clampNew = clamp;
+		this.newMetrics = metrics;
+		return this;
+	}
+
+	/**
+	 * Metrics that are levels on a day (e.g. patients in hospital) rather than cumulative counts; at a coarser
+	 * {@link #resolution(Rollups.Resolution)} they are averaged over the period instead of taking its last value.
+	 */
+	public Dataset current(String... metrics) {
+		this.currentMetrics = metrics;
+		return this;
+	}
+
+	/**
+	 * Adds the {@code days}-day rolling average of every new metric to the second axis, as column
+	 * {@code prefix + metric + " (" + days + "-DAY AVG)"}.
+	 */
+	public Dataset average(int days) {
+		this.averageDays = days;
+		return this;
+	}
+
+	/**
+	 * Shows at most {@code n} regions, the ones with the highest rank metric.
+	 */
+	public Dataset topRegions(int n) {
+		this.topRegions = n;
+		return this;
+	}
+
+	/**
+	 * Title of the summary chart (sum over all regions), followed by the total of the rank metric.
+	 *
+	 * @param toCommonLastDate if true, the summary ends at the last date every region has reported
+	 * @param dropNegativeNew  if true, days on which the first new metric decreases are left out of the summary
+	 */
+	public Dataset summary(String title, boolean toCommonLastDate, boolean dropNegativeNew) {
+		this.summaryTitle = title;
+		this.summaryToCommonLastDate = toCommonLastDate;
+		this.dropNegativeNew = dropNegativeNew;
+		return this;
+	}
+
+	public Dataset yTitles(String total, String daily) {
+		this.yTitles = new String[]{total, daily};
+		return this;
+	}
+
+	/**
+	 * HTML shown above the charts, given the last reported date.
+	 */
+	public Dataset body(Function<LocalDate, String> body) {
+		this.body = body;
+		return this;
+	}
+
+	/**
+	 * Plots at most {@code points} points per trace; the last {@code fullResolutionDays} days keep every point, see
+	 * {@link Downsampler}.
+	 */
+	public Dataset pointBudget(int points, int fullResolutionDays) {
+		this.downsampler = new Downsampler(points, fullResolutionDays);
+		return this;
+	}
+
+	/**
+	 * Charts the page at {@code resolution}, from the {@link Rollups} computed once per run; the rolling averages are
+	 * only shown at daily resolution.
+	 */
+	public Dataset resolution(Rollups.Resolution resolution) {
+		this.resolution = resolution;
+		return this;
+	}
+
+	String newName(String metric) {
+		return newPrefix + metric;
+	}
+
+	String averageName(String metric) {
+		return newName(metric) + " (" + averageDays + "-DAY AVG)";
+	}
+}
@@ -0,0 +1,108 @@
+package charts;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Registry of the data sources the website is built from.
+ */
+public class Datasets {
+
+	public static final String JHU_TIME_SERIES = "https://raw.githubusercontent.com/CSSEGISandData/COVID-19/master/csse_covid_19_data/csse_covid_19_time_series/";
+	public static final String OPENZH_URL      = "https://raw.githubusercontent.com/openZH/covid_19/master/COVID19_Fallzahlen_CH_total_v2.csv";
+
+	/**
+	 * Columns of the JHU time series files: the region and one cumulative count per day; Lat and Long are skipped.
+	 */
+	public static final CsvSchema JHU_TIME_SERIES_COLUMNS = new CsvSchema().string("Province/State")
+	                                                                       .string("Country/Region")
+	                                                                       .integers(Covid19Charts::isJhuDate);
+
+	/**
+	 * The columns of the openZH file read by {@link Covid19Charts.SwissCharts#toCantonSeries(tech.tablesaw.api.Table)}.
+	 */
+	public static final CsvSchema OPENZH_COLUMNS = new CsvSchema().date("date", "yyyy-MM-dd")
+	                                                              .string("abbreviation_canton_and_fl")
+	                                                              .integer("ncumul_conf")
+	                                                              .integer("ncumul_deceased")
+	                                                              .integer("current_hosp")
+	                                                              .integer("current_icu")
+	                                                              .integer("ncumul_released");
+
+	private static final Supplier<List<Dataset.Source>> JHU_GLOBAL_SOURCES =
+			() -> Arrays.asList(new Dataset.Source(JHU_TIME_SERIES + "time_series_covid19_confirmed_global.csv", JHU_TIME_SERIES_COLUMNS),
+			                    new Dataset.Source(JHU_TIME_SERIES + "time_series_covid19_deaths_global.csv", JHU_TIME_SERIES_COLUMNS),
+			                    new Dataset.Source(JHU_TIME_SERIES + "time_series_covid19_recovered_global.csv", JHU_TIME_SERIES_COLUMNS));
+
+	private static final Dataset.Normalizer JHU_GLOBAL_JOIN =
+			(raw, store) -> Covid19Charts.joinSeries(Covid19Charts.toTimeSeries(store, raw.get(0), "CONFIRMED"),
+			                                         Covid19Charts.toTimeSeries(store, raw.get(1), "DEAD"),
+			                                         Covid19Charts.toTimeSeries(store, raw.get(2), "RECOVERED"));
+
+	public static final Dataset JHU_GLOBAL = new Dataset("global", "index.md", JHU_GLOBAL_SOURCES, JHU_GLOBAL_JOIN)
+			.metrics("CONFIRMED", "ACTIVE", "RECOVERED", "DEAD")
+			.newMetrics("NEW ", true, "CONFIRMED", "DEAD")
+			.topRegions(75)
+			.summary("GLOBAL CASES", false, false)
+			.yTitles("TOTAL CASES", "NEW CASES")
+			.pointBudget(300, 90)
+			.body(Covid19Charts::pageBody);
+
+	public static final Dataset OPENZH_CH = new Dataset("ch", "ch.md",
+			() -> Collections.singletonList(new Dataset.Source(OPENZH_URL, OPENZH_COLUMNS)),
+			(raw, store) -> Covid19Charts.SwissCharts.fillCantonSeries(raw.get(0), store))
+			.metrics("CONFIRMED", "DEAD", "HOSPITALIZED", "ICU", "RELEASED")
+			.newMetrics("NEW_", false, "CONFIRMED", "DEAD")
+			.current("HOSPITALIZED", "ICU")
+			.summary("CH CASES", true, true)
+			.yTitles("TOTAL_CASES", "NEW_CASES")
+			.body(Covid19Charts.SwissCharts::pageBody);
+
+	/**
+	 * Province level series from the JHU daily reports, see {@link DailyReportsIngest}; with a store, completed days
+	 * are checkpointed in it.
+	 */
+	public static final Dataset JHU_DAILY_REPORTS = new Dataset("daily", "daily.md",
+			store -> new DailyReportsIngest(SourceCache.shared(), store == null ? null : store.directory("daily_reports")).load())
+			.metrics("CONFIRMED", "ACTIVE", "RECOVERED", "DEAD")
+			.newMetrics("NEW ", true, "CONFIRMED", "DEAD")
+			.average(7)
+			.topRegions(75)
+			.summary("GLOBAL CASES", false, false)
+			.yTitles("TOTAL CASES", "NEW CASES")
+			.pointBudget(300, 90)
+			.body(lastDate -> "<p>Global COVID-19 cases from the daily reports followed by 75 regions with highest number of confirmed cases.</p>" +
+			                  "<p>Source:  Johns Hopkins Coronavirus Resource Center published <a href=\"https://github.com/CSSEGISandData/2019-nCoV\">here</a> (updated daily).</p>" +
+			                  "<p>Last reported date: " + lastDate + ". Page updated " + Instant.ofEpochMilli(System.currentTimeMillis()).atZone(ZoneId.of("UTC")) + ".</p>");
+
+	/**
+	 * Overview of all regions of the global time series at weekly resolution, see {@link Rollups}.
+	 */
+	public static final Dataset JHU_GLOBAL_WEEKLY = new Dataset("global_weekly", "weekly.md", JHU_GLOBAL_SOURCES, JHU_GLOBAL_JOIN)
+			.metrics("CONFIRMED", "ACTIVE", "RECOVERED", "DEAD")
+			.newMetrics("NEW ", true, "CONFIRMED", "DEAD")
+			.resolution(Rollups.Resolution.WEEK)
+			.summary("GLOBAL CASES", false, false)
+			.yTitles("TOTAL CASES", "NEW CASES")
+			.body(lastDate -> "<p>Weekly global COVID-19 cases followed by all regions, ordered by the number of confirmed cases.</p>" +
+			                  "<p>Source:  Johns Hopkins Coronavirus Resource Center published <a href=\"https://github.com/CSSEGISandData/COVID-19\">here</a> (updated daily).</p>" +
+			                  "<p>Last reported date: " + lastDate + ". Page updated " + Instant.ofEpochMilli(System.currentTimeMillis()).atZone(ZoneId.of("UTC")) + ".</p>");
+
+	/**
+	 * The datasets that are published on the website.
+	 */
+	public static final List<Dataset> PUBLISHED = Collections.unmodifiableList(Arrays.asList(JHU_GLOBAL, OPENZH_CH));
+
+	public static final List<Dataset> ALL = Collections.unmodifiableList(Arrays.asList(JHU_GLOBAL, OPENZH_CH, JHU_DAILY_REPORTS, JHU_GLOBAL_WEEKLY));
+
+	public static Dataset byName(String name) {
+		for (Dataset d : ALL) {
+			if (d.name.equals(name)) return d;
+		}
+		throw new IllegalArgumentException("Unknown dataset " + name);
+	}
+}
@@ -0,0 +1,198 @@
+package charts;
+
+import java.util.Arrays;
+
+/**
+ * Point budget of a chart trace. A trace longer than {@code budget} points is reduced with Largest-Triangle-Three-Buckets
+ * (Steinarsson, 2013), which keeps the points that shape the line, while the last {@code fullResolutionDays} days keep
+ * every point. The first and last point and the minimum and maximum of the reduced part are always kept, and the first
+ * missing value (NaN) of every gap stays so a line is still broken where the data is.
+ * <p>
+ * Works on primitive arrays; x must be ascending (epoch days for date axes).
+ */
+public class Downsampler {
+
+	final int budget;
+	final int fullResolutionDays;
+
+	/**
+	 * @param budget             points per trace, at least 4 (the reduced part keeps endpoints and extrema)
+	 * @param fullResolutionDays the most recent days are not reduced; they count against the budget, but the older part
+	 *                           keeps at least 4 points
+	 */
+	public Downsampler(int budget, int fullResolutionDays) {
+		if (budget < 4) throw new IllegalArgumentException("budget must be at least 4: " + budget);
+		if (fullResolutionDays < 0) throw new IllegalArgumentException("fullResolutionDays must not be negative: " + fullResolutionDays);
+		this.budget = budget;
+		this.fullResolutionDays = fullResolutionDays;
+	}
+
+	/**
+	 * Ascending indices of the points to plot; all indices if the trace fits the budget.
+	 */
+	public int[] select(double[] x, double[] y) {
+		int n      = x.length;
+		int recent = n;
+		while (fullResolutionDays > 0 && recent > 0 && x[recent - 1] > x[n - 1] - fullResolutionDays) recent--;
+		int older = Math.max(4, budget - (n - recent));
+		if (recent <= older) return identity(n);
+
+		// finite points of the older part, and the first NaN of every gap
+		int[] finite = new int[recent];
+		int[] gaps   = new int[recent];
+		int   f      = 0, g = 0;
+		for (int i = 0; i < recent; i++) {
+			if (!Double.isNaN(y[i])) finite[f++] = i;
+			else if (i == 0 || !Double.isNaN(y[i - 1])) gaps[g++] = i;
+		}
+		int[] kept = f <= older - g ? Arrays.copyOf(finite, f) : reduce(x, y, Arrays.copyOf(finite, f), Math.max(4, older - g));
+
+		int[] out = new int[kept.length + g + n - recent];
+		System.arraycopy(kept, 0, out, 0, kept.length);
+		System.arraycopy(gaps, 0, out, kept.length, g);
+		Arrays.sort(out, 0, kept.length + g);
+		for (int i = recent; i < n; i++) out[kept.length + g + i - recent] = i;
+		return out;
+	}
+
+	/**
+	 * {@code m} of the points {@code idx}: the sequence is split at its minimum and maximum, and every segment gets its
+	 * share of the remaining points by length.
+	 */
+	private static int[] reduce(double[] x, double[] y, int[] idx, int m) {
+		int min = 0, max = 0;
+		for (int i = 1; i < idx.length; i++) {
+			if (y[idx[i]] < y[idx[min]]) min = i;
+			if (y[idx[i]] > y[idx[max]]) max = i;
+		}
+		int[] splits = Arrays.stream(new int[]{0, Math.min(min, max), Math.max(min, max), idx.length - 1}).distinct().toArray();
+		int   interior = m - splits.length;
+		int   length   = idx.length - splits.length;
+		int[] out      = new int[m];
+		int   k        = 0, assigned = 0, seen = 0;
+		for (int s = 0; s + 1 < splits.length; s++) {
+			int inner = splits[s + 1] - splits[s] - 1;
+			seen += inner;
+			// cumulative rounding, so the shares add up to exactly the interior budget
+			int share = length == 0 ? 0 : (int) ((long) interior * seen / length) - assigned;
+			assigned += share;
+			k = lttb(x, y, idx, splits[s], splits[s + 1], share + 2, out, k);
+			k--; // the next segment starts at this one's last point
+		}
+		out[k++] = idx[splits[splits.length - 1]];
+		return Arrays.copyOf(out, k);
+	}
+
+	/**
+	 * Largest-Triangle-Three-Buckets over {@code idx[from..to]} selecting {@code m >= 2} points including both ends;
+	 * writes them to {@code out} from {@code k} and returns the new end.
+	 */
+	private static int lttb(double[] x, double[] y, int[] idx, int from, int to, int m, int[] out, int k) {
+		int n = to - from + 1;
+		if (n <= m) {
+			for (int i = from; i <= to; i++) out[k++] = idx[i];
+			return k;
+		}
+		out[k++] = idx[from];
+		if (m == 2) {
+			out[k++] = idx[to];
+			return k;
+		}
+		double every = (double) (n - 2) / (m - 2);
+		int    a     = from;
+		for (int b = 0; b < m - 2; b++) {
+			int    avgStart = from + (int) ((b + 1) * every) + 1;
+			int    avgEnd   = Math.min(from + (int) ((b + 2) * every) + 1, to + 1);
+			double avgX     = 0, avgY = 0;
+			for (int i = avgStart; i < avgEnd; i++) {
+				avgX += x[idx[i]];
+				avgY += y[idx[i]];
+			}
+			avgX /= avgEnd - avgStart;
+			avgY /= avgEnd - avgStart;
+
+			int    rangeEnd = from + (int) ((b + 1) * every) + 1;
+			double ax       = x[idx[a]], ay = y[idx[a]];
+			double maxArea  = -1;
+			int    next     = a;
+			for (int i = from + (int) (b * every) + 1; i < rangeEnd; i++) {
+				double area = Math.abs((ax - avgX) * (y[idx[i]] - ay) - (ax - x[idx[i]]) * (avgY - ay));
+				if (area > maxArea) {
+					maxArea = area;
+					next = i;
+				}
+			}
+			out[k++] = idx[next];
+			a = next;
+		}
+		out[k++] = idx[to];
+		return k;
+	}
+
+	private static int[] identity(int n) {
+		int[] out = new int[n];
+		for (int i = 0; i < n; i++) out[i] = i;
+		return out;
+	}
+
+	@Override
+	public String toString() {
+		return budget + " points, full resolution for " + fullResolutionDays + " days";
+	}
+
+	/**
+	 * Reduces noisy series with spikes, dips and gaps, and checks that the budget holds and that the endpoints, the
+	 * extrema, the gaps and the recent days are kept.
+	 */
+	private static class TestDownsampling {
+		public static void main(String[] args) {
+			java.util.Random random = new java.util.Random(7);
+			for (int n : new int[]{3, 50, 600, 2000}) {
+				for (int budget : new int[]{4, 30, 200}) {
+					for (int recentDays : new int[]{0, 14, 100}) {
+						double[] x = new double[n], y = new double[n];
+						for (int i = 0; i < n; i++) {
+							x[i] = 18300 + i + (i > n / 2 ? 5 : 0);
+							y[i] = 1000 * Math.sin(i / 40.0) + random.nextGaussian() * 50;
+							if (i % 97 == 13) y[i] = Double.NaN;
+						}
+						if (n > 10) {
+							y[random.nextInt(n / 2)] = 1e6;
+							y[n / 2 + random.nextInt(n / 2)] = -1e6;
+						}
+						check(new Downsampler(budget, recentDays), x, y);
+					}
+				}
+			}
+			System.out.println("Downsampled series keep endpoints, extrema, gaps and recent days within budget");
+		}
+
+		private static void check(Downsampler d, double[] x, double[] y) {
+			int[]  kept = d.select(x, y);
+			int    n    = x.length;
+			String what = d + ", " + n + " points";
+			for (int i = 1; i < kept.length; i++) {
+				if (kept[i] <= kept[i - 1]) throw new IllegalStateException(what + ": not ascending at " + i);
+			}
+			int recent = 0, gaps = 0, min = -1, max = -1;
+			for (int i = 0; i < n; i++) {
+				if (x[i] > x[n - 1] - d.fullResolutionDays && d.fullResolutionDays > 0) recent++;
+				if (Double.isNaN(y[i]) && (i == 0 || !Double.isNaN(y[i - 1]))) gaps++;
+				if (!Double.isNaN(y[i]) && (min < 0 || y[i] < y[min])) min = i;
+				if (!Double.isNaN(y[i]) && (max < 0 || y[i] > y[max])) max = i;
+			}
+			if (kept.length > Math.max(d.budget, 4 + recent + gaps))
+				throw new IllegalStateException(what + ": " + kept.length + " points");
+			if (n > 0 && (kept[0] != 0 || kept[kept.length - 1] != n - 1))
+				throw new IllegalStateException(what + ": endpoints dropped");
+			for (int i : new int[]{min, max}) {
+				if (i >= 0 && Arrays.binarySearch(kept, i) < 0) throw new IllegalStateException(what + ": extremum " + i + " dropped");
+			}
+			for (int i = 0; i < n; i++) {
+				boolean required = x[i] > x[n - 1] - d.fullResolutionDays && d.fullResolutionDays > 0 || Double.isNaN(y[i]) && (i == 0 || !Double.isNaN(y[i - 1]));
+				if (required && kept.length < n && Arrays.binarySearch(kept, i) < 0)
+					throw new IllegalStateException(what + ": point " + i + " dropped");
+			}
+		}
+	}
+}
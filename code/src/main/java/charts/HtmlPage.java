@@ -0,0 +1,32 @@
+package charts;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Text and charts of a generated page, rendered by {@link WebUtils} either to a String or streamed to a file.
+ */
+public class HtmlPage {
+
+	public final String            bodyBeforeFigures;
+	public final TimeSeriesChart[] charts;
+
+	public HtmlPage(@Nullable String bodyBeforeFigures, TimeSeriesChart... charts) {
+		this.bodyBeforeFigures = bodyBeforeFigures;
+		this.charts = charts;
+	}
+
+	public String toHtml() {
+		return WebUtils.toHtml(bodyBeforeFigures, charts);
+	}
+
+	/**
+	 * Writes the page to {@code path}, as an index with per-chart data files if {@link WebUtils#MULTI_PAGE} is set.
+	 */
+	public void write(Path path) throws IOException {
+		if (WebUtils.MULTI_PAGE) WebUtils.writeMultiPage(path, bodyBeforeFigures, charts);
+		else WebUtils.write(path, bodyBeforeFigures, charts);
+	}
+}
@@ -0,0 +1,394 @@
+package charts;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jetbrains.annotations.Nullable;
+import tech.tablesaw.api.DateColumn;
+import tech.tablesaw.api.IntColumn;
+import tech.tablesaw.api.Table;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serves the pages from memory instead of writing them to files: every published page is held as a multi-page index
+ * ({@code /<dataset>/}) with one JSON slice per region chart ({@code /<dataset>/data/<version>/<chart file>}), each
+ * rendered, gzip compressed and hashed once when the page is published. Requests are answered from these bytes with an
+ * ETag, and a matching {@code If-None-Match} gets 304.
+ * <p>
+ * The version in the slice paths is a hash of all slices, so an index only ever loads the slices it was rendered with.
+ * A regenerated page replaces the index and adds its slices in one step; the slices of the replaced version stay
+ * available for {@link #DEFAULT_GRACE_MINUTES} minutes, so a browser that loaded the previous index can still load
+ * the charts it lazily fetches, including those of regions that dropped out of the new page.
+ * <p>
+ * Usage: {@code PageServer <port> <minutes> [<store dir>]} regenerates the {@link Datasets#PUBLISHED} pages every N
+ * minutes in the background with {@link UpdateRunner}; "/" redirects to the first of them.
+ */
+public class PageServer {
+
+	static final String DATA_DIR = "data";
+
+	static final int DEFAULT_GRACE_MINUTES = 30;
+
+	/**
+	 * A response body in plain and gzip form.
+	 */
+	static class Resource {
+		final String contentType;
+		final byte[] plain;
+		final byte[] gzip;
+		final String etag;
+
+		Resource(String contentType, String content) {
+			this.contentType = contentType;
+			this.plain = content.getBytes(StandardCharsets.UTF_8);
+			this.gzip = gzip(plain);
+			this.etag = '"' + sha1(plain) + '"';
+		}
+	}
+
+	private volatile Map<String, Resource> resources = Collections.emptyMap();
+	private volatile String                home;
+
+	// guarded by this: the data path of the current version of every page, and of replaced versions when they expire
+	private final Map<String, String> versions = new HashMap<>();
+	private final Map<String, Long>   retired  = new HashMap<>();
+
+	long graceNanos = TimeUnit.MINUTES.toNanos(DEFAULT_GRACE_MINUTES);
+
+	private final HttpServer      server;
+	private final ExecutorService pool;
+
+	/**
+	 * @param threads number of threads answering requests
+	 */
+	public PageServer(InetSocketAddress address, int threads) throws IOException {
+		// headers and body are separate writes: without TCP_NODELAY every keep-alive response waits for a delayed ACK
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) System.setProperty("sun.net.httpserver.nodelay", "true");
+		server = HttpServer.create(address, 1024);
+		pool = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "page-server");
+			t.setDaemon(true);
+			return t;
+		});
+		server.setExecutor(pool);
+		server.createContext("/", this::handle);
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	public void stop() {
+		server.stop(0);
+		pool.shutdown();
+	}
+
+	public int port() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Renders and compresses the page of dataset {@code name}, then replaces its previous version in one step.
+	 */
+	public void publish(String name, HtmlPage page) {
+		Map<String, Resource> rendered = new HashMap<>();
+		String                data;
+		try (RunReport.Stage stage = RunReport.stage("serialize", name)) {
+			List<Resource> slices = Parallel.map(Math.max(0, page.charts.length - 1),
+					i -> new Resource("application/json; charset=utf-8", WebUtils.chartData(page.charts[i + 1])));
+			StringBuilder etags = new StringBuilder();
+			for (Resource r : slices) etags.append(r.etag);
+			String version = sha1(etags.toString().getBytes(StandardCharsets.UTF_8)).substring(0, 12);
+			data = "/" + name + "/" + DATA_DIR + "/" + version + "/";
+			StringWriter index = new StringWriter();
+			try {
+				WebUtils.writeMultiPageIndex(index, page.bodyBeforeFigures, DATA_DIR + "/" + version, page.charts);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			rendered.put("/" + name + "/", new Resource("text/html; charset=utf-8", index.toString()));
+			long bytes = 0;
+			for (int k = 1; k < page.charts.length; k++) {
+				Resource r = slices.get(k - 1);
+				rendered.put(data + page.charts[k].fileName(), r);
+				bytes += r.gzip.length;
+			}
+			stage.rows(rendered.size()).bytesOut(bytes);
+		}
+		swap(name, data, rendered);
+	}
+
+	/**
+	 * Replaces the page {@code name} by {@code rendered}, keeping the slices of replaced versions until they expire.
+	 *
+	 * @param data data path of the new version
+	 */
+	private synchronized void swap(String name, String data, Map<String, Resource> rendered) {
+		long   now      = System.nanoTime();
+		String previous = versions.put(name, data);
+		if (previous != null && !previous.equals(data)) retired.put(previous, now + graceNanos);
+		retired.remove(data);
+		retired.values().removeIf(expires -> expires - now <= 0);
+		String                prefix = "/" + name + "/";
+		Map<String, Resource> next   = new HashMap<>(rendered);
+		for (Map.Entry<String, Resource> e : resources.entrySet()) {
+			if (!e.getKey().startsWith(prefix) || retired.containsKey(dataPath(e.getKey()))) next.putIfAbsent(e.getKey(), e.getValue());
+		}
+		resources = Collections.unmodifiableMap(next);
+		if (home == null) home = prefix;
+	}
+
+	/**
+	 * Directory of a resource path, for a slice the data path of its version.
+	 */
+	private static String dataPath(String path) {
+		return path.substring(0, path.lastIndexOf('/') + 1);
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			String  method  = exchange.getRequestMethod();
+			Headers headers = exchange.getResponseHeaders();
+			if (!method.equals("GET") && !method.equals("HEAD")) {
+				headers.set("Allow", "GET, HEAD");
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			String path = exchange.getRequestURI().getPath();
+			if (path.equals("/") && home != null) {
+				headers.set("Location", home);
+				exchange.sendResponseHeaders(302, -1);
+				return;
+			}
+			Resource r = resources.get(path);
+			if (r == null && !path.endsWith("/")) {
+				if (resources.containsKey(path + "/")) {
+					headers.set("Location", path + "/");
+					exchange.sendResponseHeaders(301, -1);
+					return;
+				}
+			}
+			if (r == null) {
+				exchange.sendResponseHeaders(404, -1);
+				return;
+			}
+			headers.set("ETag", r.etag);
+			headers.set("Cache-Control", "no-cache");
+			headers.set("Vary", "Accept-Encoding");
+			if (r.etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				exchange.sendResponseHeaders(304, -1);
+				return;
+			}
+			String encoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+			byte[] body     = r.plain;
+			if (encoding != null && encoding.contains("gzip")) {
+				headers.set("Content-Encoding", "gzip");
+				body = r.gzip;
+			}
+			headers.set("Content-Type", r.contentType);
+			if (method.equals("HEAD")) {
+				headers.set("Content-Length", Integer.toString(body.length));
+				exchange.sendResponseHeaders(200, -1);
+				return;
+			}
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static byte[] gzip(byte[] data) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 4 + 64);
+		try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+			out.write(data);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static String sha1(byte[] data) {
+		try {
+			StringBuilder sb = new StringBuilder();
+			for (byte b : MessageDigest.getInstance("SHA-1").digest(data)) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		PageServer  server  = new PageServer(new InetSocketAddress(Integer.parseInt(args[0])), Runtime.getRuntime().availableProcessors() * 2);
+		int         minutes = Integer.parseInt(args[1]);
+		SeriesStore store   = args.length > 2 ? new SeriesStore(Paths.get(args[2])) : null;
+		List<UpdateRunner.Job> jobs = UpdateRunner.pageJobs(Datasets.PUBLISHED, d -> {
+			RunReport report = RunReport.start(d.name());
+			try {
+				server.publish(d.name(), ChartEngine.page(d, store));
+			} finally {
+				report.finish();
+			}
+		});
+		server.start();
+		System.out.println("Serving on port " + server.port());
+		new UpdateRunner(jobs).schedule(minutes, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * Publishes a synthetic page, checks gzip, ETag/304 and 404 with a local client, and that the slices of a replaced
+	 * version (also of regions no longer on the page) are served until the grace period ends. Then measures the request
+	 * rate of a few keep-alive clients, each loading the index and then slices of that index, while the page is
+	 * republished, and checks that every request succeeds and every response matches the ETag it came with.
+	 * Usage: {@code TestServe [<regions> [<seconds>]]}.
+	 */
+	private static class TestServe {
+		public static void main(String[] args) throws Exception {
+			int regions = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+			int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+			PageServer server = new PageServer(new InetSocketAddress("127.0.0.1", 0), 8);
+			server.start();
+			server.publish("test", page(regions, 0));
+			String base = "http://127.0.0.1:" + server.port();
+
+			HttpURLConnection c = get(base + "/", null, false);
+			if (c.getResponseCode() != 200 || !c.getURL().getPath().equals("/test/")) throw new IllegalStateException("No redirect to the page: " + c.getURL());
+			String etag = c.getHeaderField("ETag");
+			drain(c);
+			c = get(base + "/test/", etag, true);
+			if (c.getResponseCode() != 304) throw new IllegalStateException("Expected 304, got " + c.getResponseCode());
+			c = get(base + "/test/", null, true);
+			if (!"gzip".equals(c.getHeaderField("Content-Encoding"))) throw new IllegalStateException("Not compressed");
+			drain(c);
+			c = get(base + "/missing", null, false);
+			if (c.getResponseCode() != 404) throw new IllegalStateException("Expected 404, got " + c.getResponseCode());
+
+			server.graceNanos = TimeUnit.SECONDS.toNanos(1);
+			List<String> first = slices(base);
+			server.publish("test", page(regions / 2, 1));
+			String dropped = first.get(first.size() - 1);
+			if (slices(base).contains(first.get(0))) throw new IllegalStateException("Slice path not versioned: " + first.get(0));
+			if (get(base + dropped, null, false).getResponseCode() != 200) throw new IllegalStateException("Replaced version not served: " + dropped);
+			Thread.sleep(1500);
+			server.publish("test", page(regions, 2));
+			if (get(base + dropped, null, false).getResponseCode() != 404) throw new IllegalStateException("Expired version still served: " + dropped);
+			server.graceNanos = TimeUnit.MINUTES.toNanos(DEFAULT_GRACE_MINUTES);
+
+			Map<String, byte[]> bodies   = new ConcurrentHashMap<>();
+			AtomicInteger       requests = new AtomicInteger();
+			AtomicInteger       errors   = new AtomicInteger();
+			long                end      = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+			List<Thread>        clients  = new ArrayList<>();
+			for (int t = 0; t < 8; t++) {
+				int offset = t;
+				Thread client = new Thread(() -> {
+					while (System.nanoTime() < end) {
+						try {
+							List<String> paths = slices(base);
+							requests.incrementAndGet();
+							for (int i = 0; i < 20; i++) {
+								HttpURLConnection conn = get(base + paths.get((offset + i * 8) % paths.size()), null, true);
+								String tag  = conn.getHeaderField("ETag");
+								byte[] body = drain(conn);
+								byte[] seen = bodies.putIfAbsent(tag, body);
+								if (seen != null && !Arrays.equals(seen, body)) errors.incrementAndGet();
+								requests.incrementAndGet();
+							}
+						} catch (IOException e) {
+							errors.incrementAndGet();
+						}
+					}
+				});
+				client.start();
+				clients.add(client);
+			}
+			int versions = 3;
+			for (; System.nanoTime() < end; versions++) {
+				server.publish("test", page(regions, versions));
+				Thread.sleep(200);
+			}
+			for (Thread client : clients) client.join();
+			server.stop();
+			if (errors.get() > 0) throw new IllegalStateException(errors.get() + " failed or inconsistent responses");
+			System.out.println(String.format("%,d requests in %d s (%,d/s) over %d versions, no failed or inconsistent response",
+					requests.get(), seconds, requests.get() / seconds, versions));
+		}
+
+		/**
+		 * Loads the index of the test page and returns the paths of its slices, the way the browser resolves them.
+		 */
+		private static List<String> slices(String base) throws IOException {
+			String       index = new String(drain(get(base + "/test/", null, false)), StandardCharsets.UTF_8);
+			List<String> paths = new ArrayList<>();
+			for (int i = index.indexOf("data-src='"); i >= 0; i = index.indexOf("data-src='", i + 1)) {
+				int from = i + "data-src='".length();
+				paths.add("/test/" + index.substring(from, index.indexOf('\'', from)));
+			}
+			return paths;
+		}
+
+		private static HtmlPage page(int regions, int version) {
+			List<TimeSeriesChart> charts = new ArrayList<>();
+			Random                random = new Random(version);
+			for (int g = 0; g <= regions; g++) {
+				DateColumn dt     = DateColumn.create("DT");
+				IntColumn  values = IntColumn.create("CONFIRMED");
+				int        x      = 0;
+				for (int d = 0; d < 100; d++) {
+					dt.append(LocalDate.of(2020, 3, 1).plusDays(d));
+					values.append(x += random.nextInt(100));
+				}
+				charts.add(new TimeSeriesChart(Table.create(dt, values), "DT", new String[][]{{"CONFIRMED"}},
+						null, "Region " + g, new String[]{"TOTAL CASES"}).key("R" + g));
+			}
+			return new HtmlPage("<p>Version " + version + "</p>", charts.toArray(new TimeSeriesChart[0]));
+		}
+
+		private static HttpURLConnection get(String url, @Nullable String etag, boolean gzip) throws IOException {
+			HttpURLConnection c = (HttpURLConnection) new URL(url).openConnection();
+			if (etag != null) c.setRequestProperty("If-None-Match", etag);
+			if (gzip) c.setRequestProperty("Accept-Encoding", "gzip");
+			return c;
+		}
+
+		private static byte[] drain(HttpURLConnection c) throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (InputStream in = c.getInputStream()) {
+				byte[] buffer = new byte[8192];
+				for (int n; (n = in.read(buffer)) > 0; ) bytes.write(buffer, 0, n);
+			}
+			return bytes.toByteArray();
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package charts;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Ordered parallel map over independent per-region work (building and serializing figures). The number of threads is
+ * set by the {@code charts.parallelism} system property, by default the number of cores; 1 runs everything on the
+ * calling thread. Results are always returned in input order, so output stays deterministic.
+ */
+public class Parallel {
+
+	public static final int PARALLELISM = Math.max(1, Integer.getInteger("charts.parallelism", Runtime.getRuntime().availableProcessors()));
+
+	private static ForkJoinPool pool;
+
+	private static synchronized ForkJoinPool pool() {
+		if (pool == null) pool = new ForkJoinPool(PARALLELISM);
+		return pool;
+	}
+
+	/**
+	 * Returns {@code [f(0), ..., f(n - 1)]}; null results are dropped.
+	 */
+	public static <R> List<R> map(int n, IntFunction<R> f) {
+		if (PARALLELISM == 1 || n < 2) {
+			List<R> result = new ArrayList<>(n);
+			for (int i = 0; i < n; i++) {
+				R r = f.apply(i);
+				if (r != null) result.add(r);
+			}
+			return result;
+		}
+		IntFunction<R> task = RunReport.attributed(f);
+		try {
+			return pool().submit(() -> IntStream.range(0, n).parallel().mapToObj(task).filter(r -> r != null).collect(Collectors.toList())).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			if (e.getCause() instanceof Error) throw (Error) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Splits {@code n} items into consecutive batches of a few items per thread, so that results can be produced in
+	 * parallel but consumed (e.g. written) in order without holding all of them at once.
+	 */
+	public static List<int[]> batches(int n) {
+		int         size   = PARALLELISM * 2;
+		List<int[]> result = new ArrayList<>();
+		for (int start = 0; start < n; start += size) {
+			result.add(new int[]{start, Math.min(n, start + size)});
+		}
+		return result;
+	}
+}
@@ -0,0 +1,326 @@
+package charts;
+
+import org.jetbrains.annotations.Nullable;
+import tech.tablesaw.aggregate.AggregateFunctions;
+import tech.tablesaw.api.DateColumn;
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.IntColumn;
+import tech.tablesaw.api.NumericColumn;
+import tech.tablesaw.api.StringColumn;
+import tech.tablesaw.api.Table;
+import tech.tablesaw.columns.Column;
+import tech.tablesaw.columns.dates.PackedLocalDate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Aggregates of a long REGION, DT, metrics table computed in one pass over its rows: the sum of every metric per date,
+ * the maximum and the last reported value of every metric per region, and the last date per region. Dates and regions
+ * are indexed by epoch day and region id into primitive arrays, so no group keys are boxed and no table is sorted.
+ * <p>
+ * Missing values are skipped; like {@code summarize(sum)} a date without values sums to 0, while the maximum of a
+ * region without values is NaN. Region ids are assigned in order of first appearance, as the groups of
+ * {@link TableUtils#groupByRegion(Table, String...)}.
+ */
+public class RegionAggregates {
+	private final List<String>         metrics;
+	private final String[]             regions;
+	private final Map<String, Integer> index = new HashMap<>();
+	private final int                  minDay;
+	private final boolean[]            hasDay;
+	private final double[][]           sum;
+	private final double[][]           max;
+	private final double[][]           last;
+	private final int[]                lastDay;
+
+	private RegionAggregates(Table t, String... metrics) {
+		StringColumn       regionCol = t.stringColumn("REGION");
+		DateColumn         dateCol   = t.dateColumn("DT");
+		NumericColumn<?>[] cols      = new NumericColumn<?>[metrics.length];
+		for (int m = 0; m < metrics.length; m++) {
+			cols[m] = t.numberColumn(metrics[m]);
+		}
+		this.metrics = Arrays.asList(metrics);
+
+		int first = Integer.MAX_VALUE;
+		int end   = Integer.MIN_VALUE;
+		for (int r = 0; r < t.rowCount(); r++) {
+			if (dateCol.isMissing(r)) continue;
+			int day = (int) PackedLocalDate.toEpochDay(dateCol.getIntInternal(r));
+			first = Math.min(first, day);
+			end = Math.max(end, day + 1);
+		}
+		minDay = first;
+		int numDays = Math.max(0, end - first);
+
+		hasDay = new boolean[numDays];
+		sum = new double[metrics.length][numDays];
+		List<String> names    = new ArrayList<>();
+		int          capacity = 16;
+		double[][]   regMax   = new double[metrics.length][capacity];
+		double[][]   regLast  = new double[metrics.length][capacity];
+		int[][]      lastSet  = new int[metrics.length][capacity];
+		int[]        regDay   = new int[capacity];
+		for (int r = 0; r < t.rowCount(); r++) {
+			Integer g = index.get(regionCol.get(r));
+			if (g == null) {
+				g = names.size();
+				index.put(regionCol.get(r), g);
+				names.add(regionCol.get(r));
+				if (g == capacity) {
+					capacity *= 2;
+					for (int m = 0; m < metrics.length; m++) {
+						regMax[m] = Arrays.copyOf(regMax[m], capacity);
+						regLast[m] = Arrays.copyOf(regLast[m], capacity);
+						lastSet[m] = Arrays.copyOf(lastSet[m], capacity);
+					}
+					regDay = Arrays.copyOf(regDay, capacity);
+				}
+				for (int m = 0; m < metrics.length; m++) {
+					regMax[m][g] = Double.NaN;
+					regLast[m][g] = Double.NaN;
+					lastSet[m][g] = Integer.MIN_VALUE;
+				}
+				regDay[g] = Integer.MIN_VALUE;
+			}
+			if (dateCol.isMissing(r)) continue;
+			int day = (int) PackedLocalDate.toEpochDay(dateCol.getIntInternal(r));
+			hasDay[day - minDay] = true;
+			if (day > regDay[g]) regDay[g] = day;
+			for (int m = 0; m < metrics.length; m++) {
+				double v = cols[m].getDouble(r);
+				if (Double.isNaN(v)) continue;
+				sum[m][day - minDay] += v;
+				if (Double.isNaN(regMax[m][g]) || v > regMax[m][g]) regMax[m][g] = v;
+				if (day >= lastSet[m][g]) {
+					lastSet[m][g] = day;
+					regLast[m][g] = v;
+				}
+			}
+		}
+		regions = names.toArray(new String[0]);
+		max = new double[metrics.length][];
+		last = new double[metrics.length][];
+		for (int m = 0; m < metrics.length; m++) {
+			max[m] = Arrays.copyOf(regMax[m], regions.length);
+			last[m] = Arrays.copyOf(regLast[m], regions.length);
+		}
+		lastDay = Arrays.copyOf(regDay, regions.length);
+	}
+
+	/**
+	 * Aggregates {@code metrics} of {@code t} by date and by region.
+	 */
+	public static RegionAggregates of(Table t, String... metrics) {
+		return new RegionAggregates(t, metrics);
+	}
+
+	private int metric(String metric) {
+		int m = metrics.indexOf(metric);
+		if (m < 0) throw new IllegalArgumentException(metric + " was not aggregated");
+		return m;
+	}
+
+	public int size() {
+		return regions.length;
+	}
+
+	public String region(int g) {
+		return regions[g];
+	}
+
+	/**
+	 * Id of {@code region}, -1 if the table has no rows for it.
+	 */
+	public int indexOf(String region) {
+		Integer g = index.get(region);
+		return g == null ? -1 : g;
+	}
+
+	public double max(int g, String metric) {
+		return max[metric(metric)][g];
+	}
+
+	/**
+	 * Value of {@code metric} on the last date region {@code g} reported it, NaN if it never did.
+	 */
+	public double last(int g, String metric) {
+		return last[metric(metric)][g];
+	}
+
+	@Nullable
+	public LocalDate lastDate(int g) {
+		return lastDay[g] == Integer.MIN_VALUE ? null : LocalDate.ofEpochDay(lastDay[g]);
+	}
+
+	/**
+	 * The last date every region has reported, null if a region has no dated rows.
+	 */
+	@Nullable
+	public LocalDate commonLastDate() {
+		int common = Integer.MAX_VALUE;
+		for (int day : lastDay) {
+			common = Math.min(common, day);
+		}
+		return common == Integer.MIN_VALUE || common == Integer.MAX_VALUE ? null : LocalDate.ofEpochDay(common);
+	}
+
+	/**
+	 * DT and the sum of every metric per date (named like the columns of {@code summarize(metric, sum).by("DT")}),
+	 * ordered by DT.
+	 */
+	public Table sumsByDate() {
+		int rows = 0;
+		for (boolean b : hasDay) {
+			if (b) rows++;
+		}
+		DateColumn dt   = DateColumn.create("DT", rows);
+		double[][] sums = new double[metrics.size()][rows];
+		for (int d = 0, row = 0; d < hasDay.length; d++) {
+			if (!hasDay[d]) continue;
+			dt.set(row, PackedLocalDate.pack(LocalDate.ofEpochDay(minDay + d)));
+			for (int m = 0; m < sums.length; m++) {
+				sums[m][row] = sum[m][d];
+			}
+			row++;
+		}
+		Table t = Table.create("sums", dt);
+		for (int m = 0; m < sums.length; m++) {
+			t.addColumns(DoubleColumn.create(sumName(metrics.get(m)), sums[m]));
+		}
+		return t;
+	}
+
+	public static String sumName(String metric) {
+		return AggregateFunctions.sum.functionName() + " [" + metric + "]";
+	}
+
+	/**
+	 * Ids of the (at most) {@code n} regions with the highest maximum of {@code metric}, highest first; ties are ordered
+	 * by region name and regions without values come last. Selected with a bounded heap of size {@code n}, so ranking
+	 * the top few of many regions does not sort all of them.
+	 */
+	public int[] top(String metric, int n) {
+		double[] values = max[metric(metric)];
+		int      k      = Math.min(n, regions.length);
+		// min-heap on rank: heap[0] is the worst of the regions kept so far
+		int[] heap = new int[k];
+		int   size = 0;
+		for (int g = 0; g < regions.length; g++) {
+			if (size < k) {
+				heap[size] = g;
+				siftUp(heap, size++, values);
+			} else if (k > 0 && ranksBefore(g, heap[0], values)) {
+				heap[0] = g;
+				siftDown(heap, size, values);
+			}
+		}
+		// pop the worst first and fill from the back
+		int[] top = new int[size];
+		for (int i = size - 1; i >= 0; i--) {
+			top[i] = heap[0];
+			heap[0] = heap[--size];
+			siftDown(heap, size, values);
+		}
+		return top;
+	}
+
+	private boolean ranksBefore(int a, int b, double[] values) {
+		double va = values[a];
+		double vb = values[b];
+		if (Double.isNaN(va) != Double.isNaN(vb)) return Double.isNaN(vb);
+		if (va != vb && !Double.isNaN(va)) return va > vb;
+		return regions[a].compareTo(regions[b]) < 0;
+	}
+
+	private void siftUp(int[] heap, int i, double[] values) {
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (!ranksBefore(heap[parent], heap[i], values)) break;
+			swap(heap, i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int[] heap, int size, double[] values) {
+		int i = 0;
+		while (true) {
+			int worst = i;
+			for (int child = 2 * i + 1; child <= 2 * i + 2 && child < size; child++) {
+				if (ranksBefore(heap[worst], heap[child], values)) worst = child;
+			}
+			if (worst == i) return;
+			swap(heap, i, worst);
+			i = worst;
+		}
+	}
+
+	private static void swap(int[] heap, int i, int j) {
+		int x = heap[i];
+		heap[i] = heap[j];
+		heap[j] = x;
+	}
+
+	/**
+	 * Compares the aggregates of a random table (with missing values, gaps and tied maxima) with Tablesaw's
+	 * {@code summarize} and the top-N with a full sort of the regions.
+	 */
+	private static class TestAgainstSummarize {
+		public static void main(String[] args) {
+			Random       random  = new Random(11);
+			StringColumn region  = StringColumn.create("REGION");
+			DateColumn   dt      = DateColumn.create("DT");
+			IntColumn    cases   = IntColumn.create("CASES");
+			DoubleColumn deaths  = DoubleColumn.create("DEATHS");
+			LocalDate    start   = LocalDate.of(2020, 3, 1);
+			for (int r = 0; r < 200; r++) {
+				for (int day = random.nextInt(20); day < 60; day += 1 + random.nextInt(3)) {
+					region.append("R" + r);
+					dt.append(start.plusDays(day));
+					if (random.nextInt(10) == 0) cases.appendMissing();
+					else cases.append(random.nextInt(50) * 10);
+					deaths.append(random.nextInt(10) == 0 ? Double.NaN : random.nextInt(100));
+				}
+			}
+			List<Integer> shuffled = new ArrayList<>();
+			for (int r = 0; r < region.size(); r++) shuffled.add(r);
+			Collections.shuffle(shuffled, random);
+			int[]            rows = shuffled.stream().mapToInt(Integer::intValue).toArray();
+			Table            t    = Table.create(region.subset(rows), dt.subset(rows), cases.subset(rows), deaths.subset(rows));
+			RegionAggregates a    = of(t, "CASES", "DEATHS");
+
+			Table expected = t.summarize("CASES", "DEATHS", AggregateFunctions.sum).by("DT").sortAscendingOn("DT");
+			Table actual   = a.sumsByDate();
+			expected = Table.create(expected.name(), actual.columnNames().stream().map(expected::column).toArray(Column[]::new));
+			if (!expected.write().toString("csv").equals(actual.write().toString("csv")))
+				throw new IllegalStateException("Sums differ:\n" + expected.first(5) + "\n" + actual.first(5));
+
+			Table maxima = t.summarize("CASES", AggregateFunctions.max).by("REGION");
+			for (int r = 0; r < maxima.rowCount(); r++) {
+				double e = maxima.doubleColumn(1).getDouble(r);
+				double m = a.max(a.indexOf(maxima.stringColumn(0).get(r)), "CASES");
+				if (Double.compare(e, m) != 0) throw new IllegalStateException("Max of " + maxima.stringColumn(0).get(r) + ": " + m + " instead of " + e);
+			}
+
+			Integer[] all = new Integer[a.size()];
+			for (int g = 0; g < all.length; g++) all[g] = g;
+			Arrays.sort(all, Comparator.<Integer>comparingDouble(g -> -a.max(g, "CASES")).thenComparing(a::region));
+			for (int n : new int[]{0, 1, 10, 75, all.length, all.length + 5}) {
+				int[] top = a.top("CASES", n);
+				for (int i = 0; i < Math.min(n, all.length); i++) {
+					if (top[i] != all[i]) throw new IllegalStateException("Top " + n + " differs at " + i + ": " + a.region(top[i]) + " instead of " + a.region(all[i]));
+				}
+				if (top.length != Math.min(n, all.length)) throw new IllegalStateException("Top " + n + " has " + top.length + " regions");
+			}
+			System.out.println("Aggregates of " + t.rowCount() + " rows, " + a.size() + " regions match summarize and a full sort");
+		}
+	}
+}
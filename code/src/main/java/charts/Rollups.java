@@ -0,0 +1,346 @@
+package charts;
+
+import tech.tablesaw.aggregate.AggregateFunctions;
+import tech.tablesaw.api.DateColumn;
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.IntColumn;
+import tech.tablesaw.api.StringColumn;
+import tech.tablesaw.api.Table;
+import tech.tablesaw.columns.dates.PackedLocalDate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Weekly and monthly series of every region of a {@link Dataset}, computed together in one pass over the rows of a
+ * {@link TableUtils.RegionGroups} (contiguous per region, sorted by DT) so that a page can be charted at a coarser
+ * resolution without another aggregation over the long table. Per period:
+ * <ul>
+ * <li>cumulative metrics keep their last reported value,</li>
+ * <li>{@link Dataset#current(String...) current} metrics (e.g. patients in hospital) are averaged over the reported
+ * days,</li>
+ * <li>new metrics are the sum of the daily increases, with the same clamping as the daily charts.</li>
+ * </ul>
+ * Weeks start on Monday. The DT of a period is its last reported day, so the current, incomplete period ends at the
+ * last report; periods without any report are left out. Missing values are skipped, a period without values is NaN.
+ */
+public class Rollups {
+
+	public enum Resolution {
+		DAY, WEEK, MONTH;
+
+		/**
+		 * Epoch day of the first day of the period containing {@code day}.
+		 */
+		int start(int day) {
+			switch (this) {
+				case WEEK:
+					return day - Math.floorMod(day + 3, 7); // epoch day 0 is a Thursday
+				case MONTH:
+					return (int) LocalDate.ofEpochDay(day).withDayOfMonth(1).toEpochDay();
+				default:
+					return day;
+			}
+		}
+
+		/**
+		 * Epoch day after the period starting on {@code start}.
+		 */
+		int end(int start) {
+			switch (this) {
+				case WEEK:
+					return start + 7;
+				case MONTH:
+					return (int) LocalDate.ofEpochDay(start).plusMonths(1).toEpochDay();
+				default:
+					return start + 1;
+			}
+		}
+	}
+
+	private enum Kind {LAST, MEAN, INCREASE}
+
+	private static final Resolution[] ROLLED = {Resolution.WEEK, Resolution.MONTH};
+
+	private final String[] regions;
+	private final Table[]  tables  = new Table[ROLLED.length];
+	private final int[][]  offsets = new int[ROLLED.length][];
+
+	/**
+	 * Rolls up the metrics of {@code d} in {@code groups}; the groups of the result are the groups of the input.
+	 */
+	public static Rollups of(Dataset d, TableUtils.RegionGroups groups) {
+		String[] regions = new String[groups.size()];
+		int[]    bounds  = new int[groups.size() + 1];
+		for (int g = 0; g < regions.length; g++) {
+			regions[g] = groups.region(g);
+			bounds[g + 1] = groups.end(g);
+		}
+		return new Rollups(d, groups.sorted(), regions, bounds, m -> m);
+	}
+
+	/**
+	 * Rolls up a single series sorted by DT, e.g. the summary of a page, whose metric columns are
+	 * {@code column.apply(metric)}.
+	 */
+	public static Rollups ofSeries(Dataset d, Table series, Function<String, String> column) {
+		return new Rollups(d, series, new String[]{series.name()}, new int[]{0, series.rowCount()}, column);
+	}
+
+	private Rollups(Dataset d, Table sorted, String[] regions, int[] bounds, Function<String, String> column) {
+		this.regions = regions;
+		List<String> names   = new ArrayList<>();
+		List<String> sources = new ArrayList<>();
+		List<Kind>   kinds   = new ArrayList<>();
+		List<String> current = Arrays.asList(d.currentMetrics);
+		for (String m : d.metrics) {
+			names.add(column.apply(m));
+			sources.add(column.apply(m));
+			kinds.add(current.contains(m) ? Kind.MEAN : Kind.LAST);
+		}
+		for (String m : d.newMetrics) {
+			names.add(d.newName(m));
+			sources.add(column.apply(m));
+			kinds.add(Kind.INCREASE);
+		}
+		int        k      = names.size();
+		double[][] values = new double[k][];
+		for (int c = 0; c < k; c++) {
+			values[c] = sorted.numberColumn(sources.get(c)).asDoubleArray();
+		}
+		DateColumn dates = sorted.dateColumn("DT");
+
+		int      rows    = bounds[regions.length];
+		Period[] periods = new Period[ROLLED.length];
+		for (int p = 0; p < ROLLED.length; p++) {
+			periods[p] = new Period(ROLLED[p], kinds, rows / (p == 0 ? 7 : 28) + 2 * regions.length + 1);
+			offsets[p] = new int[regions.length + 1];
+		}
+		int[] previous = new int[k];
+		for (int g = 0; g < regions.length; g++) {
+			Arrays.fill(previous, 0);
+			for (Period period : periods) period.end = Integer.MIN_VALUE;
+			for (int r = bounds[g]; r < bounds[g + 1]; r++) {
+				if (dates.isMissing(r)) continue;
+				int day = (int) PackedLocalDate.toEpochDay(dates.getIntInternal(r));
+				for (Period period : periods) {
+					if (day >= period.end) period.open(day);
+					period.day = day;
+				}
+				for (int c = 0; c < k; c++) {
+					double v = values[c][r];
+					if (kinds.get(c) == Kind.INCREASE) {
+						// as SeriesKernels.increase: truncated to int, a missing value counts as 0
+						int x = (int) v;
+						int i = x - previous[c];
+						previous[c] = x;
+						if (d.clampNew && i < 0) i = 0;
+						for (Period period : periods) period.sum[c] += i;
+					} else if (!Double.isNaN(v)) {
+						for (Period period : periods) {
+							period.last[c] = v;
+							period.sum[c] += v;
+							period.count[c]++;
+						}
+					}
+				}
+			}
+			for (int p = 0; p < ROLLED.length; p++) {
+				periods[p].close();
+				offsets[p][g + 1] = periods[p].size;
+			}
+		}
+		for (int p = 0; p < ROLLED.length; p++) {
+			tables[p] = periods[p].toTable(sorted.name() + " " + ROLLED[p], names, regions, offsets[p]);
+		}
+	}
+
+	public int size() {
+		return regions.length;
+	}
+
+	public String region(int g) {
+		return regions[g];
+	}
+
+	/**
+	 * All regions at {@code resolution} (WEEK or MONTH): REGION, DT and the rolled up metrics, ordered by region, then
+	 * DT.
+	 */
+	public Table table(Resolution resolution) {
+		return tables[rolled(resolution)];
+	}
+
+	/**
+	 * The series of group {@code g} at {@code resolution} as a table of its own.
+	 */
+	public Table table(Resolution resolution, int g) {
+		int p = rolled(resolution);
+		return tables[p].inRange(offsets[p][g], offsets[p][g + 1]);
+	}
+
+	private static int rolled(Resolution resolution) {
+		int p = Arrays.asList(ROLLED).indexOf(resolution);
+		if (p < 0) throw new IllegalArgumentException("No rollup at " + resolution + " resolution");
+		return p;
+	}
+
+	/**
+	 * The open period of one resolution and the rows written so far.
+	 */
+	private static class Period {
+		final Resolution resolution;
+		final List<Kind> kinds;
+		final double[]   last, sum;
+		final int[]      count;
+		int              end, day;
+		boolean          open;
+
+		int        size;
+		int[]      days;
+		double[][] out;
+
+		Period(Resolution resolution, List<Kind> kinds, int capacity) {
+			this.resolution = resolution;
+			this.kinds = kinds;
+			last = new double[kinds.size()];
+			sum = new double[kinds.size()];
+			count = new int[kinds.size()];
+			days = new int[capacity];
+			out = new double[kinds.size()][capacity];
+		}
+
+		void open(int day) {
+			close();
+			end = resolution.end(resolution.start(day));
+			Arrays.fill(last, Double.NaN);
+			Arrays.fill(sum, 0);
+			Arrays.fill(count, 0);
+			open = true;
+		}
+
+		/**
+		 * Writes the open period, if any.
+		 */
+		void close() {
+			if (!open) return;
+			if (size == days.length) {
+				days = Arrays.copyOf(days, size * 2);
+				for (int c = 0; c < out.length; c++) out[c] = Arrays.copyOf(out[c], size * 2);
+			}
+			days[size] = day;
+			for (int c = 0; c < out.length; c++) {
+				switch (kinds.get(c)) {
+					case LAST:
+						out[c][size] = last[c];
+						break;
+					case MEAN:
+						out[c][size] = count[c] == 0 ? Double.NaN : sum[c] / count[c];
+						break;
+					default:
+						out[c][size] = sum[c];
+				}
+			}
+			size++;
+			open = false;
+		}
+
+		Table toTable(String name, List<String> names, String[] regions, int[] offsets) {
+			String[] region = new String[size];
+			for (int g = 0; g < regions.length; g++) {
+				Arrays.fill(region, offsets[g], offsets[g + 1], regions[g]);
+			}
+			DateColumn dt = DateColumn.create("DT", size);
+			for (int i = 0; i < size; i++) {
+				dt.set(i, PackedLocalDate.pack(LocalDate.ofEpochDay(days[i])));
+			}
+			Table t = Table.create(name, StringColumn.create("REGION", region), dt);
+			for (int c = 0; c < names.size(); c++) {
+				double[] v = Arrays.copyOf(out[c], size);
+				if (kinds.get(c) == Kind.INCREASE) {
+					int[] sums = new int[size];
+					for (int i = 0; i < size; i++) sums[i] = (int) v[i];
+					t.addColumns(IntColumn.create(names.get(c), sums));
+				} else {
+					t.addColumns(DoubleColumn.create(names.get(c), v));
+				}
+			}
+			return t;
+		}
+	}
+
+	/**
+	 * Rolls up random regions with gaps, corrections and missing values and compares every period with
+	 * {@code summarize(last / mean / sum).by(REGION, period)} over the daily rows.
+	 */
+	private static class TestAgainstSummarize {
+		public static void main(String[] args) {
+			Random       random = new Random(5);
+			StringColumn region = StringColumn.create("REGION");
+			DateColumn   dt     = DateColumn.create("DT");
+			DoubleColumn total  = DoubleColumn.create("TOTAL");
+			DoubleColumn level  = DoubleColumn.create("LEVEL");
+			for (int r = 0; r < 60; r++) {
+				double cumulative = 0;
+				for (int day = random.nextInt(40); day < 150; day += 1 + (random.nextInt(5) == 0 ? random.nextInt(9) : 0)) {
+					region.append("R" + r);
+					dt.append(LocalDate.of(2020, 2, 20).plusDays(day));
+					cumulative = Math.max(0, cumulative + random.nextInt(50) - (random.nextInt(10) == 0 ? 60 : 0));
+					total.append(random.nextInt(10) == 0 ? Double.NaN : cumulative);
+					level.append(random.nextInt(8) == 0 ? Double.NaN : random.nextInt(30));
+				}
+			}
+			Table   t       = Table.create("test", region, dt, total, level);
+			Dataset d       = new Dataset("test", "test.md", java.util.Collections::emptyList, (raw, store) -> t)
+					.metrics("TOTAL", "LEVEL").current("LEVEL").newMetrics("NEW ", true, "TOTAL");
+			TableUtils.RegionGroups groups  = TableUtils.groupByRegion(t);
+			Rollups                 rollups = of(d, groups);
+
+			for (Resolution resolution : ROLLED) {
+				Table daily = groups.sorted().copy();
+				int[] increase = new int[daily.rowCount()], period = new int[daily.rowCount()];
+				for (int g = 0; g < groups.size(); g++) {
+					int[] x = SeriesKernels.increase(groups.table(g).numberColumn("TOTAL").asDoubleArray(), true);
+					System.arraycopy(x, 0, increase, groups.start(g), x.length);
+				}
+				for (int r = 0; r < period.length; r++) {
+					period[r] = resolution.start((int) daily.dateColumn("DT").get(r).toEpochDay());
+				}
+				daily.addColumns(IntColumn.create("NEW TOTAL", increase), IntColumn.create("PERIOD", period));
+				Table expected = daily.summarize("TOTAL", AggregateFunctions.last).by("REGION", "PERIOD");
+				Table mean     = daily.summarize("LEVEL", AggregateFunctions.mean).by("REGION", "PERIOD");
+				Table sum      = daily.summarize("NEW TOTAL", AggregateFunctions.sum).by("REGION", "PERIOD");
+				Table actual   = rollups.table(resolution);
+				if (expected.rowCount() != actual.rowCount())
+					throw new IllegalStateException(resolution + ": " + actual.rowCount() + " periods instead of " + expected.rowCount());
+				java.util.Map<String, Integer> rows = new java.util.HashMap<>();
+				for (int r = 0; r < actual.rowCount(); r++) {
+					rows.put(actual.stringColumn("REGION").get(r) + " " + resolution.start((int) actual.dateColumn("DT").get(r).toEpochDay()), r);
+				}
+				for (int e = 0; e < expected.rowCount(); e++) {
+					String  key = expected.stringColumn(0).get(e) + " " + (int) expected.numberColumn(1).getDouble(e);
+					Integer r   = rows.get(key);
+					if (r == null) throw new IllegalStateException(resolution + ": no period " + key);
+					check(resolution + " " + key + " last", expected.numberColumn(2).getDouble(e), actual.numberColumn("TOTAL").getDouble(r));
+					check(resolution + " " + key + " mean", mean.numberColumn(2).getDouble(e), actual.numberColumn("LEVEL").getDouble(r));
+					check(resolution + " " + key + " sum", sum.numberColumn(2).getDouble(e), actual.numberColumn("NEW TOTAL").getDouble(r));
+				}
+				for (int g = 0; g < groups.size(); g++) {
+					Table series = rollups.table(resolution, g);
+					if (series.rowCount() > 0 && !series.dateColumn("DT").get(series.rowCount() - 1).equals(groups.lastDate(g)))
+						throw new IllegalStateException(resolution + ": last period of " + groups.region(g) + " does not end at the last report");
+				}
+			}
+			System.out.println("Weekly and monthly rollups of " + t.rowCount() + " rows match summarize");
+		}
+
+		private static void check(String what, double expected, double actual) {
+			if (Double.compare(expected, actual) != 0 && Math.abs(expected - actual) > 1e-9)
+				throw new IllegalStateException(what + ": " + actual + " instead of " + expected);
+		}
+	}
+}
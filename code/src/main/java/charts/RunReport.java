@@ -0,0 +1,379 @@
+package charts;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * Timing and memory report of an update run. Each pipeline stage (download, parse, reshape, join, summarize, fill,
+ * figures, serialize, write) is measured with a {@link Stage}: wall time, bytes allocated by the threads working on
+ * it, rows processed and bytes read / written.
+ * <p>
+ * At the end of the run a per-stage summary is printed, and if the {@code charts.report} system property names a file,
+ * the stages are written to it: a {@code .csv} file gets one row per stage appended (so runs can be compared as the
+ * history grows), any other file is replaced by a JSON report of the run. With {@code -Dcharts.report.jfr=true}
+ * every stage is also emitted as a JFR event "charts.Stage" (needs JDK 11+ and a running recording).
+ */
+public class RunReport {
+
+	public static final String  PATH = System.getProperty("charts.report");
+	public static final boolean JFR  = Boolean.getBoolean("charts.report.jfr");
+
+	private static volatile RunReport current;
+
+	private static final ThreadLocal<Stage>     ACTIVE = new ThreadLocal<>();
+	private static final ThreadLocal<RunReport> BOUND  = new ThreadLocal<>();
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	private static final String CSV_HEADER = "run,started,stage,detail,thread,start_ms,wall_ms,allocated_bytes,rows,bytes_in,bytes_out";
+
+	private final String                       name;
+	private final Instant                      started    = Instant.now();
+	private final long                         startNanos = System.nanoTime();
+	private final long                         gcCountStart;
+	private final long                         gcMillisStart;
+	private final ConcurrentLinkedQueue<Stage> stages     = new ConcurrentLinkedQueue<>();
+
+	private RunReport(String name) {
+		this.name = name;
+		long[] gc = gcTotals();
+		gcCountStart = gc[0];
+		gcMillisStart = gc[1];
+	}
+
+	/**
+	 * Starts recording the stages of a run. One run is recorded at a time; stages opened while no run is recorded
+	 * are measured (and sent to JFR) but not reported.
+	 */
+	public static RunReport start(String name) {
+		RunReport r = new RunReport(name);
+		current = r;
+		return r;
+	}
+
+	/**
+	 * Collects the stages of work that may start before the run it belongs to, e.g. a prefetched download. Run the work
+	 * {@link #bound(RunReport, Callable) bound} to it, then {@link #attach(RunReport) attach} it to the run that uses the
+	 * result.
+	 */
+	public static RunReport detached(String name) {
+		return new RunReport(name);
+	}
+
+	/**
+	 * Wraps {@code task} so that the stages it opens are recorded in {@code report} instead of the current run.
+	 */
+	public static <T> Callable<T> bound(RunReport report, Callable<T> task) {
+		return () -> {
+			RunReport outer = BOUND.get();
+			BOUND.set(report);
+			try {
+				return task.call();
+			} finally {
+				if (outer != null) BOUND.set(outer);
+				else BOUND.remove();
+			}
+		};
+	}
+
+	/**
+	 * Adds the stages recorded so far in a {@link #detached(String) detached} report to the current run. Stages that
+	 * started before the run get a negative start time.
+	 */
+	public static void attach(RunReport detached) {
+		RunReport r = current;
+		if (r != null) r.stages.addAll(detached.stages);
+	}
+
+	/**
+	 * Opens a stage on the calling thread; close it (try-with-resources) when the stage is done.
+	 *
+	 * @param detail e.g. the URL or series the stage works on
+	 */
+	public static Stage stage(String name, @Nullable String detail) {
+		RunReport bound = BOUND.get();
+		return new Stage(bound != null ? bound : current, name, detail);
+	}
+
+	/**
+	 * Wraps per-item work that {@link Parallel} hands to other threads, so that their allocations are added to the
+	 * stage open on the calling thread.
+	 */
+	static <R> IntFunction<R> attributed(IntFunction<R> f) {
+		Stage stage = ACTIVE.get();
+		if (stage == null) return f;
+		return i -> {
+			long allocated = allocatedBytes();
+			try {
+				return f.apply(i);
+			} finally {
+				stage.tasksAllocated.addAndGet(allocatedBytes() - allocated);
+			}
+		};
+	}
+
+	/**
+	 * Bytes allocated so far by the calling thread, -1 if the JVM does not measure it.
+	 */
+	private static long allocatedBytes() {
+		if (THREADS instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean t = (com.sun.management.ThreadMXBean) THREADS;
+			if (t.isThreadAllocatedMemorySupported() && t.isThreadAllocatedMemoryEnabled()) {
+				return t.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	private static long[] gcTotals() {
+		long count = 0, millis = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+			millis += Math.max(0, gc.getCollectionTime());
+		}
+		return new long[]{count, millis};
+	}
+
+	public List<Stage> stages() {
+		List<Stage> result = new ArrayList<>(stages);
+		result.sort((a, b) -> Long.compare(a.startNanos, b.startNanos));
+		return result;
+	}
+
+	/**
+	 * Ends the run: prints the summary and writes the report file if one is configured.
+	 */
+	public void finish() throws IOException {
+		if (current == this) current = null;
+		long        wallMs = (System.nanoTime() - startNanos) / 1_000_000;
+		List<Stage> sorted = stages();
+		System.out.println(summary(sorted, wallMs));
+		if (PATH == null) return;
+		Path path = Paths.get(PATH);
+		if (path.toAbsolutePath().getParent() != null) Files.createDirectories(path.toAbsolutePath().getParent());
+		if (PATH.endsWith(".csv")) {
+			StringBuilder csv = new StringBuilder();
+			if (!Files.exists(path)) csv.append(CSV_HEADER).append('\n');
+			for (Stage s : sorted) {
+				csv.append(csvField(name)).append(',').append(started).append(',').append(csvField(s.name)).append(',')
+				   .append(csvField(s.detail)).append(',').append(csvField(s.thread)).append(',')
+				   .append((s.startNanos - startNanos) / 1_000_000).append(',').append(s.wallNanos / 1_000_000).append(',')
+				   .append(s.allocated).append(',').append(s.rows).append(',').append(s.bytesIn).append(',').append(s.bytesOut).append('\n');
+			}
+			Files.write(path, csv.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		} else {
+			Path tmp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+			Files.write(tmp, toJson(sorted, wallMs).getBytes(StandardCharsets.UTF_8));
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+	}
+
+	String toJson(List<Stage> sorted, long wallMs) {
+		MemoryUsage   heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		long[]        gc   = gcTotals();
+		StringBuilder b    = new StringBuilder("{\"run\":");
+		WebUtils.appendJsonString(b, name);
+		b.append(",\"started\":\"").append(started).append('"')
+		 .append(",\"wallMs\":").append(wallMs)
+		 .append(",\"heapUsedBytes\":").append(heap.getUsed())
+		 .append(",\"heapCommittedBytes\":").append(heap.getCommitted())
+		 .append(",\"gcCount\":").append(gc[0] - gcCountStart)
+		 .append(",\"gcMs\":").append(gc[1] - gcMillisStart)
+		 .append(",\"stages\":[");
+		for (int i = 0; i < sorted.size(); i++) {
+			Stage s = sorted.get(i);
+			b.append(i == 0 ? "\n" : ",\n").append("{\"stage\":");
+			WebUtils.appendJsonString(b, s.name);
+			if (s.detail != null) {
+				b.append(",\"detail\":");
+				WebUtils.appendJsonString(b, s.detail);
+			}
+			b.append(",\"thread\":");
+			WebUtils.appendJsonString(b, s.thread);
+			b.append(",\"startMs\":").append((s.startNanos - startNanos) / 1_000_000)
+			 .append(",\"wallMs\":").append(s.wallNanos / 1_000_000)
+			 .append(",\"allocatedBytes\":").append(s.allocated)
+			 .append(",\"rows\":").append(s.rows)
+			 .append(",\"bytesIn\":").append(s.bytesIn)
+			 .append(",\"bytesOut\":").append(s.bytesOut)
+			 .append('}');
+		}
+		return b.append("]}\n").toString();
+	}
+
+	private String summary(List<Stage> sorted, long wallMs) {
+		Map<String, long[]> byStage = new LinkedHashMap<>();
+		for (Stage s : sorted) {
+			long[] total = byStage.computeIfAbsent(s.name, n -> new long[3]);
+			total[0]++;
+			total[1] += s.wallNanos;
+			total[2] += Math.max(0, s.allocated);
+		}
+		StringBuilder b = new StringBuilder(String.format("Run %s: %,d ms%n", name, wallMs));
+		b.append(String.format("%-12s %6s %10s %14s%n", "stage", "count", "wall ms", "allocated MB"));
+		for (Map.Entry<String, long[]> e : byStage.entrySet()) {
+			b.append(String.format("%-12s %6d %,10d %,14.1f%n", e.getKey(), e.getValue()[0], e.getValue()[1] / 1_000_000, e.getValue()[2] / 1e6));
+		}
+		return b.toString();
+	}
+
+	private static String csvField(@Nullable String s) {
+		if (s == null) return "";
+		return s.contains(",") || s.contains("\"") ? "\"" + s.replace("\"", "\"\"") + "\"" : s;
+	}
+
+	/**
+	 * One measured stage. Counters that do not apply stay -1.
+	 */
+	public static class Stage implements AutoCloseable {
+		final         String     name;
+		final         String     detail;
+		final         String     thread;
+		final         long       startNanos;
+		final         AtomicLong tasksAllocated = new AtomicLong();
+		private final RunReport  report;
+		private final Stage      outer;
+		private final long       threadAllocatedStart;
+		private final Object     jfrEvent;
+		long wallNanos;
+		long allocated = -1;
+		long rows      = -1;
+		long bytesIn   = -1;
+		long bytesOut  = -1;
+
+		private Stage(@Nullable RunReport report, String name, @Nullable String detail) {
+			this.report = report;
+			this.name = name;
+			this.detail = detail;
+			this.thread = Thread.currentThread().getName();
+			this.outer = ACTIVE.get();
+			this.jfrEvent = JFR && Jfr.INSTANCE != null ? Jfr.INSTANCE.begin() : null;
+			ACTIVE.set(this);
+			this.threadAllocatedStart = allocatedBytes();
+			this.startNanos = System.nanoTime();
+		}
+
+		public Stage rows(long rows) {
+			this.rows = rows;
+			return this;
+		}
+
+		public Stage bytesIn(long bytes) {
+			this.bytesIn = bytes;
+			return this;
+		}
+
+		public Stage bytesOut(long bytes) {
+			this.bytesOut = bytes;
+			return this;
+		}
+
+		@Override
+		public void close() {
+			wallNanos = System.nanoTime() - startNanos;
+			long threadAllocated = allocatedBytes();
+			if (threadAllocatedStart >= 0 && threadAllocated >= 0) allocated = threadAllocated - threadAllocatedStart + tasksAllocated.get();
+			// allocations of parallel tasks of a nested stage also belong to the enclosing one
+			if (outer != null) outer.tasksAllocated.addAndGet(tasksAllocated.get());
+			if (outer != null) ACTIVE.set(outer);
+			else ACTIVE.remove();
+			if (report != null) report.stages.add(this);
+			if (jfrEvent != null) Jfr.INSTANCE.commit(jfrEvent, this);
+		}
+	}
+
+	/**
+	 * Defines the "charts.Stage" JFR event through {@code jdk.jfr.EventFactory}, so this class still compiles and runs
+	 * on Java 8 (where {@link #INSTANCE} is null).
+	 */
+	private static class Jfr {
+		private static final List<String> FIELDS = Arrays.asList("stage", "detail", "rows", "bytesIn", "bytesOut", "allocatedBytes");
+
+		static final Jfr INSTANCE = create();
+
+		private final Object factory;
+		private final Method newEvent;
+		private final Method begin;
+		private final Method end;
+		private final Method set;
+		private final Method commit;
+
+		private Jfr(Object factory) throws ReflectiveOperationException {
+			Class<?> eventClass = Class.forName("jdk.jfr.Event");
+			this.factory = factory;
+			this.newEvent = factory.getClass().getMethod("newEvent");
+			this.begin = eventClass.getMethod("begin");
+			this.end = eventClass.getMethod("end");
+			this.set = eventClass.getMethod("set", int.class, Object.class);
+			this.commit = eventClass.getMethod("commit");
+		}
+
+		@Nullable
+		private static Jfr create() {
+			try {
+				Class<?>     annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+				Class<?>     valueDescriptor   = Class.forName("jdk.jfr.ValueDescriptor");
+				Class<?>     eventFactory      = Class.forName("jdk.jfr.EventFactory");
+				List<Object> annotations       = Arrays.asList(
+						annotationElement.getConstructor(Class.class, Object.class).newInstance(Class.forName("jdk.jfr.Name"), "charts.Stage"),
+						annotationElement.getConstructor(Class.class, Object.class).newInstance(Class.forName("jdk.jfr.Label"), "Update Stage"),
+						annotationElement.getConstructor(Class.class, Object.class).newInstance(Class.forName("jdk.jfr.Category"), new String[]{"Charts"}),
+						annotationElement.getConstructor(Class.class, Object.class).newInstance(Class.forName("jdk.jfr.StackTrace"), false));
+				List<Object> fields            = new ArrayList<>();
+				for (String field : FIELDS) {
+					Class<?> type = field.equals("stage") || field.equals("detail") ? String.class : long.class;
+					fields.add(valueDescriptor.getConstructor(Class.class, String.class).newInstance(type, field));
+				}
+				return new Jfr(eventFactory.getMethod("create", List.class, List.class).invoke(null, annotations, fields));
+			} catch (ReflectiveOperationException | LinkageError e) {
+				return null;
+			}
+		}
+
+		@Nullable
+		Object begin() {
+			try {
+				Object event = newEvent.invoke(factory);
+				begin.invoke(event);
+				return event;
+			} catch (ReflectiveOperationException e) {
+				return null;
+			}
+		}
+
+		void commit(Object event, Stage s) {
+			try {
+				end.invoke(event);
+				Object[] values = {s.name, s.detail, s.rows, s.bytesIn, s.bytesOut, s.allocated};
+				for (int i = 0; i < values.length; i++) {
+					set.invoke(event, i, values[i]);
+				}
+				commit.invoke(event);
+			} catch (ReflectiveOperationException e) {
+				// a failed event must not fail the run
+			}
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package charts;
+
+import java.util.Arrays;
+
+/**
+ * Derived series of a single region, computed on primitive arrays in one loop each and written into presized
+ * outputs. Chained operations have fused kernels (e.g. the clamped daily increase, or its rolling average straight
+ * from the cumulative series), so adding a derived line costs one pass over the region instead of one per step.
+ * <p>
+ * Cumulative inputs are doubles as read with {@code asDoubleArray()}; a missing value (NaN) counts as 0 in the daily
+ * increase, as in {@link TableUtils#d1}. Outputs that are undefined on a day (incomplete window, no denominator) are NaN,
+ * which the charts leave out.
+ */
+public class SeriesKernels {
+
+	/**
+	 * Daily increase {@code x[i] - x[i - 1]} (with {@code x[-1] = 0}) truncated to int; if {@code clamp}, decreases
+	 * (corrections of the cumulative numbers) are 0.
+	 */
+	public static int[] increase(double[] cumulative, boolean clamp) {
+		int[] out      = new int[cumulative.length];
+		int   previous = 0;
+		for (int i = 0; i < cumulative.length; i++) {
+			int x = (int) cumulative[i];
+			int d = x - previous;
+			out[i] = clamp && d < 0 ? 0 : d;
+			previous = x;
+		}
+		return out;
+	}
+
+	/**
+	 * Sum of the last {@code window} values, NaN until the window is complete.
+	 */
+	public static double[] rollingSum(int[] x, int window) {
+		return rolling(x, window, 1);
+	}
+
+	/**
+	 * Mean of the last {@code window} values, NaN until the window is complete.
+	 */
+	public static double[] rollingMean(int[] x, int window) {
+		return rolling(x, window, window);
+	}
+
+	private static double[] rolling(int[] x, int window, double divisor) {
+		checkWindow(window);
+		double[] out = new double[x.length];
+		long     sum = 0;
+		for (int i = 0; i < x.length; i++) {
+			sum += x[i];
+			if (i >= window) sum -= x[i - window];
+			out[i] = i >= window - 1 ? sum / divisor : Double.NaN;
+		}
+		return out;
+	}
+
+	/**
+	 * {@code rollingMean(increase(cumulative, clamp), window)} in one loop without the intermediate array: the increase
+	 * leaving the window is recomputed from the cumulative series.
+	 */
+	public static double[] rollingIncreaseMean(double[] cumulative, boolean clamp, int window) {
+		checkWindow(window);
+		double[] out = new double[cumulative.length];
+		long     sum = 0;
+		for (int i = 0; i < cumulative.length; i++) {
+			sum += increaseAt(cumulative, i, clamp);
+			if (i >= window) sum -= increaseAt(cumulative, i - window, clamp);
+			out[i] = i >= window - 1 ? (double) sum / window : Double.NaN;
+		}
+		return out;
+	}
+
+	private static int increaseAt(double[] cumulative, int i, boolean clamp) {
+		int d = (int) cumulative[i] - (i == 0 ? 0 : (int) cumulative[i - 1]);
+		return clamp && d < 0 ? 0 : d;
+	}
+
+	/**
+	 * {@code numerator[i] / denominator[i]}, e.g. the case fatality rate DEAD / CONFIRMED; NaN where the denominator is
+	 * not positive.
+	 */
+	public static double[] ratio(double[] numerator, double[] denominator) {
+		double[] out = new double[numerator.length];
+		for (int i = 0; i < out.length; i++) {
+			out[i] = denominator[i] > 0 ? numerator[i] / denominator[i] : Double.NaN;
+		}
+		return out;
+	}
+
+	/**
+	 * Average daily growth rate of a cumulative series over the last {@code window} days,
+	 * {@code (x[i] / x[i - window])^(1 / window) - 1}; NaN until the window is complete or while {@code x[i - window]}
+	 * is not positive.
+	 */
+	public static double[] growthRate(double[] cumulative, int window) {
+		checkWindow(window);
+		double[] out = new double[cumulative.length];
+		for (int i = 0; i < out.length; i++) {
+			double base = i >= window ? cumulative[i - window] : Double.NaN;
+			out[i] = base > 0 ? Math.pow(cumulative[i] / base, 1.0 / window) - 1 : Double.NaN;
+		}
+		return out;
+	}
+
+	/**
+	 * Days a cumulative series takes to double at the growth of the last {@code window} days,
+	 * {@code window * ln 2 / ln(x[i] / x[i - window])}; NaN where it did not grow.
+	 */
+	public static double[] doublingTime(double[] cumulative, int window) {
+		checkWindow(window);
+		double   ln2 = Math.log(2);
+		double[] out = new double[cumulative.length];
+		for (int i = 0; i < out.length; i++) {
+			double base = i >= window ? cumulative[i - window] : Double.NaN;
+			out[i] = base > 0 && cumulative[i] > base ? window * ln2 / Math.log(cumulative[i] / base) : Double.NaN;
+		}
+		return out;
+	}
+
+	private static void checkWindow(int window) {
+		if (window < 1) throw new IllegalArgumentException("window must be positive: " + window);
+	}
+
+	/**
+	 * Checks the fused kernels against the step-by-step definitions on a series with corrections and missing values.
+	 */
+	private static class TestKernels {
+		public static void main(String[] args) {
+			double[] cumulative = {3, 5, 5, Double.NaN, 9, 8, 14, 20, 20, 31, 40, 38, 50};
+			for (boolean clamp : new boolean[]{false, true}) {
+				int[] increase = increase(cumulative, clamp);
+				int   previous = 0;
+				for (int i = 0; i < cumulative.length; i++) {
+					int x = (int) cumulative[i];
+					if (increase[i] != (clamp ? Math.max(0, x - previous) : x - previous))
+						throw new IllegalStateException("Increase at " + i + ": " + increase[i]);
+					previous = x;
+				}
+				for (int window : new int[]{1, 3, 7, 14}) {
+					double[] fused = rollingIncreaseMean(cumulative, clamp, window);
+					double[] steps = rollingMean(increase, window);
+					for (int i = 0; i < cumulative.length; i++) {
+						double expected = Double.NaN;
+						if (i >= window - 1) {
+							expected = 0;
+							for (int j = i - window + 1; j <= i; j++) expected += increase[j];
+							expected /= window;
+						}
+						if (Double.compare(fused[i], expected) != 0 || Double.compare(steps[i], expected) != 0)
+							throw new IllegalStateException("Rolling mean " + window + " at " + i + ": " + fused[i] + ", " + steps[i] + " instead of " + expected);
+					}
+				}
+			}
+			double[] doubling = doublingTime(new double[]{10, 20, 40, 40}, 1);
+			if (doubling[1] != 1 || doubling[2] != 1 || !Double.isNaN(doubling[0]) || !Double.isNaN(doubling[3]))
+				throw new IllegalStateException("Doubling time " + Arrays.toString(doubling));
+			double[] growth = growthRate(new double[]{10, 20, 40}, 2);
+			if (Math.abs(growth[2] - 1) > 1e-12) throw new IllegalStateException("Growth rate " + growth[2]);
+			System.out.println("Kernels match the step-by-step definitions");
+		}
+	}
+}
@@ -0,0 +1,484 @@
+package charts;
+
+import org.jetbrains.annotations.Nullable;
+import tech.tablesaw.api.DateColumn;
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.IntColumn;
+import tech.tablesaw.api.StringColumn;
+import tech.tablesaw.api.Table;
+import tech.tablesaw.columns.Column;
+import tech.tablesaw.columns.dates.PackedLocalDate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * On-disk store of processed long format tables (REGION, DT and metric columns) sorted on DT, REGION, together with a
+ * watermark of the last ingested date and the set of stored regions. An update only reprocesses the trailing window of
+ * dates before the watermark (to pick up late revisions) and the dates after it; older rows are taken from the store
+ * as they are. When the input has other regions than the store (a region was added, removed or renamed) the older rows
+ * no longer match and the table is rebuilt in full.
+ * <p>
+ * A table is kept as two {@link TableSnapshot}s: a base with the settled rows, and a tail from up to two windows back
+ * to the watermark. An update only rewrites the tail; the base is rewritten once the tail starts more than
+ * {@code trailingDays} days before the window. Every write goes to new file names (numbered by a generation) that the
+ * properties file then points to, so a reader never sees a half-written table and no file is replaced while it may
+ * still be open. The last table of every key is also kept in memory, so updates in a long-running process (see
+ * {@link UpdateRunner}) do not read the snapshots back. In a new process per run, reading the snapshots costs about
+ * as much as a full rebuild of the JHU series, so the store only pays off in a long-running process.
+ */
+public class SeriesStore {
+
+	public static final int DEFAULT_TRAILING_DAYS = 14;
+
+	private final Path                dir;
+	private final int                 trailingDays;
+	private final Map<String, Stored> memory = new ConcurrentHashMap<>();
+
+	public interface Processor {
+		/**
+		 * Returns the processed rows on or after {@code from}, or all rows if {@code from} is null.
+		 *
+		 * @param stored table saved by the previous run, null if there is none; must not be modified
+		 */
+		Table process(@Nullable Table stored, @Nullable LocalDate from) throws IOException;
+	}
+
+	private static class Stored {
+		final String generation;
+		final Table  table;
+
+		Stored(String generation, Table table) {
+			this.generation = generation;
+			this.table = table;
+		}
+	}
+
+	public SeriesStore(Path dir) {
+		this(dir, DEFAULT_TRAILING_DAYS);
+	}
+
+	public SeriesStore(Path dir, int trailingDays) {
+		if (trailingDays < 1) throw new IllegalArgumentException("trailingDays must be positive: " + trailingDays);
+		this.dir = dir;
+		this.trailingDays = trailingDays;
+	}
+
+	/**
+	 * Directory for the files of {@code key} that are not a single table, e.g. per-day checkpoints.
+	 */
+	public Path directory(String key) throws IOException {
+		return Files.createDirectories(dir.resolve(key));
+	}
+
+	private Path metaFile(String key) {
+		return dir.resolve(key + ".properties");
+	}
+
+	/**
+	 * The properties of {@code key}, null if nothing (or a table of an older layout) is stored.
+	 */
+	@Nullable
+	private Properties meta(String key) throws IOException {
+		if (!Files.exists(metaFile(key))) return null;
+		Properties p = new Properties();
+		try (InputStream in = Files.newInputStream(metaFile(key))) {
+			p.load(in);
+		}
+		for (String property : new String[]{"generation", "watermark", "regions", "tailFrom", "base", "tail"}) {
+			if (p.getProperty(property) == null) return null;
+		}
+		if (!Files.exists(dir.resolve(p.getProperty("base"))) || !Files.exists(dir.resolve(p.getProperty("tail")))) return null;
+		return p;
+	}
+
+	/**
+	 * Last date stored under {@code key}, null if nothing is stored.
+	 */
+	@Nullable
+	public LocalDate watermark(String key) throws IOException {
+		Properties p = meta(key);
+		return p == null ? null : LocalDate.parse(p.getProperty("watermark"));
+	}
+
+	/**
+	 * Regions stored under {@code key}, null if nothing is stored.
+	 */
+	@Nullable
+	public Set<String> regions(String key) throws IOException {
+		Properties p = meta(key);
+		return p == null ? null : regions(p);
+	}
+
+	private static Set<String> regions(Properties p) {
+		Set<String> regions = new TreeSet<>();
+		for (String r : p.getProperty("regions").split("\n", -1)) {
+			if (!r.isEmpty()) regions.add(r);
+		}
+		return regions;
+	}
+
+	/**
+	 * The table stored under {@code key}, null if nothing is stored. The table may be shared with the store and must
+	 * not be modified.
+	 */
+	@Nullable
+	public Table load(String key) throws IOException {
+		Properties p = meta(key);
+		return p == null ? null : load(key, p);
+	}
+
+	private Table load(String key, Properties p) throws IOException {
+		Stored m = memory.get(key);
+		if (m != null && m.generation.equals(p.getProperty("generation"))) return m.table;
+		Table t = TableSnapshot.read(dir.resolve(p.getProperty("base")));
+		t.append(TableSnapshot.read(dir.resolve(p.getProperty("tail"))));
+		memory.put(key, new Stored(p.getProperty("generation"), t));
+		return t;
+	}
+
+	/**
+	 * Reprocesses the dates from the start of the trailing window, merges them with the older stored rows, saves the
+	 * result and returns it sorted on DT, REGION. Everything is processed when the store is empty or its regions differ
+	 * from {@code regions}. Only the reprocessed rows are sorted; the stored rows before the window are kept in place
+	 * (see {@link #overwrite(Table, int, Table)}), and nothing is written if no value changed. The returned table shares
+	 * its columns with the store and is valid until the next update of {@code key}.
+	 *
+	 * @param regions regions of the input, i.e. of the table a full rebuild would return
+	 */
+	public Table update(String key, Collection<String> regions, Processor processor) throws IOException {
+		Set<String> inputRegions = new TreeSet<>(regions);
+		Properties  previous     = meta(key);
+		boolean     incremental  = previous != null && inputRegions.equals(regions(previous));
+		Table       stored       = incremental ? load(key, previous) : null;
+		LocalDate   from         = incremental ? LocalDate.parse(previous.getProperty("watermark")).minusDays(trailingDays - 1) : null;
+		Table       fresh        = sorted(processor.process(stored, from));
+		Table       merged       = fresh;
+		if (from != null) {
+			int cut = firstRowOn(stored, from);
+			if (!sameRows(stored, cut, fresh, stored.rowCount() - cut)) merged = rows(stored, 0, cut).append(fresh);
+			else if (overwrite(stored, cut, fresh)) merged = stored;
+			else return Table.create(stored.name(), stored.columnArray()); // nothing changed, nothing to save
+		}
+		if (merged.rowCount() == 0) return merged;
+		try {
+			save(key, inputRegions, previous, merged, from);
+		} catch (IOException | RuntimeException e) {
+			memory.remove(key);
+			throw e;
+		}
+		// a table of its own (sharing the columns), so that columns the caller adds do not end up in the store
+		return Table.create(merged.name(), merged.columnArray());
+	}
+
+	/**
+	 * Writes the tail of {@code t} (and, when the tail has grown too long or the table was rebuilt, a new base), then
+	 * points the properties of {@code key} to the new files and deletes the files of {@code previous}.
+	 *
+	 * @param from start of the reprocessed window, null if {@code t} was rebuilt in full
+	 */
+	private void save(String key, Set<String> regions, @Nullable Properties previous, Table t, @Nullable LocalDate from) throws IOException {
+		LocalDate  watermark  = t.dateColumn("DT").get(t.rowCount() - 1);
+		long       generation = previous == null ? 1 : Long.parseLong(previous.getProperty("generation")) + 1;
+		LocalDate  tailFrom   = from == null ? null : LocalDate.parse(previous.getProperty("tailFrom"));
+		Properties p          = new Properties();
+		Files.createDirectories(dir);
+		if (from == null || from.isBefore(tailFrom) || from.isAfter(tailFrom.plusDays(trailingDays))) {
+			tailFrom = from != null ? from : watermark.minusDays(trailingDays - 1);
+			p.setProperty("base", key + ".base." + generation + ".snapshot");
+			TableSnapshot.write(rows(t, 0, firstRowOn(t, tailFrom)), dir.resolve(p.getProperty("base")));
+		} else {
+			p.setProperty("base", previous.getProperty("base"));
+		}
+		p.setProperty("tail", key + ".tail." + generation + ".snapshot");
+		TableSnapshot.write(rows(t, firstRowOn(t, tailFrom), t.rowCount()), dir.resolve(p.getProperty("tail")));
+
+		p.setProperty("generation", String.valueOf(generation));
+		p.setProperty("watermark", watermark.toString());
+		p.setProperty("tailFrom", tailFrom.toString());
+		p.setProperty("regions", String.join("\n", regions));
+		Path tmp = Files.createTempFile(dir, key, ".tmp");
+		try (OutputStream out = Files.newOutputStream(tmp)) {
+			p.store(out, null);
+		}
+		Files.move(tmp, metaFile(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		memory.put(key, new Stored(p.getProperty("generation"), t));
+
+		// the files of the previous generation (or of the older single-file layout) are no longer referenced
+		Files.deleteIfExists(dir.resolve(key + ".snapshot"));
+		if (previous != null) {
+			if (!previous.getProperty("base").equals(p.getProperty("base"))) Files.deleteIfExists(dir.resolve(previous.getProperty("base")));
+			Files.deleteIfExists(dir.resolve(previous.getProperty("tail")));
+		}
+	}
+
+	/**
+	 * Overwrites the rows of {@code stored} from row {@code cut} on with the first rows of {@code fresh} and appends
+	 * the rest of {@code fresh}, in place, so the cost depends on the window only. Needs {@link #sameRows}: the replaced
+	 * rows have the same DT and REGION as the first rows of {@code fresh} (the usual case: the same regions and dates,
+	 * and maybe new days). Returns false if no value changed and no row was added.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static boolean overwrite(Table stored, int cut, Table fresh) {
+		int     replaced = stored.rowCount() - cut;
+		boolean changed  = fresh.rowCount() > replaced;
+		for (int c = 0; c < stored.columnCount(); c++) {
+			Column col = stored.column(c), source = fresh.column(c);
+			for (int r = 0; r < replaced; r++) {
+				if (!Objects.equals(col.get(cut + r), source.get(r))) {
+					col.set(cut + r, source, r);
+					changed = true;
+				}
+			}
+			for (int r = replaced; r < fresh.rowCount(); r++) col.append(source, r);
+		}
+		return changed;
+	}
+
+	/**
+	 * True if {@code a} and {@code b} have the same columns, and rows {@code [from, from + n)} of {@code a} the same DT
+	 * and REGION as the first {@code n} rows of {@code b}.
+	 */
+	private static boolean sameRows(Table a, int from, Table b, int n) {
+		if (b.rowCount() < n || a.columnCount() != b.columnCount()) return false;
+		for (int c = 0; c < a.columnCount(); c++) {
+			if (!a.column(c).name().equals(b.column(c).name()) || a.column(c).type() != b.column(c).type()) return false;
+		}
+		DateColumn   datesA   = a.dateColumn("DT"), datesB = b.dateColumn("DT");
+		StringColumn regionsA = a.stringColumn("REGION"), regionsB = b.stringColumn("REGION");
+		for (int r = 0; r < n; r++) {
+			if (datesA.getIntInternal(from + r) != datesB.getIntInternal(r) || !regionsA.get(from + r).equals(regionsB.get(r))) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * {@code t} sorted on DT, REGION. Sorts row indices rather than going through {@code Table.sortAscendingOn}, which
+	 * is slow even for the few thousand rows of a window.
+	 */
+	private static Table sorted(Table t) {
+		DateColumn   dates   = t.dateColumn("DT");
+		StringColumn regions = t.stringColumn("REGION");
+		Integer[]    order   = new Integer[t.rowCount()];
+		for (int r = 0; r < order.length; r++) order[r] = r;
+		Arrays.sort(order, Comparator.<Integer>comparingInt(dates::getIntInternal).thenComparing(regions::get));
+		int[] rows = new int[order.length];
+		for (int r = 0; r < rows.length; r++) rows[r] = order[r];
+		Table sorted = Table.create(t.name());
+		for (Column<?> c : t.columns()) sorted.addColumns(c.subset(rows));
+		return sorted;
+	}
+
+	/**
+	 * Rows {@code [from, to)} of {@code t}, copied column by column ({@code Table.inRange} goes through a much slower
+	 * row selection).
+	 */
+	private static Table rows(Table t, int from, int to) {
+		Table rows = Table.create(t.name());
+		for (Column<?> c : t.columns()) rows.addColumns(c.inRange(from, to));
+		return rows;
+	}
+
+	/**
+	 * First row of {@code t} (sorted on DT) dated on or after {@code day}, {@code t.rowCount()} if there is none.
+	 */
+	private static int firstRowOn(Table t, LocalDate day) {
+		DateColumn dates  = t.dateColumn("DT");
+		int        packed = PackedLocalDate.pack(day);
+		int        lo     = 0, hi = t.rowCount();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (dates.getIntInternal(mid) < packed) lo = mid + 1;
+			else hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Runs the incremental path twice on fixture CSVs (first with the older part of the data, then with all of it) and
+	 * checks the result is the same as a full rebuild, once with the same regions in both runs and once with a region
+	 * added and another renamed in between. Then adds the JHU dates one day at a time (reopening the store from disk
+	 * every few days), revises a value inside the window and reverts it, checking the result each time and that only
+	 * the files of the last generation of every key are left. Finally times a full reshape of a 280 x 1000 JHU-shaped
+	 * table against updates adding its last days one at a time: in this process, again without changes (the usual
+	 * tick), and with the store reopened as by a new process. Usage:
+	 * {@code TestIncrementalUpdate jhu_wide.csv openzh.csv}; without arguments small synthetic fixtures are generated.
+	 */
+	private static class TestIncrementalUpdate {
+		public static void main(String[] args) throws IOException {
+			Path tmp = Files.createTempDirectory("series_store");
+			Path jhu = args.length > 0 ? Paths.get(args[0]) : tmp.resolve("jhu.csv");
+			Path zh  = args.length > 1 ? Paths.get(args[1]) : tmp.resolve("zh.csv");
+			if (args.length == 0) writeFixtures(jhu, zh, 60, new Random(7));
+			SeriesStore store = new SeriesStore(tmp.resolve("store"), 3);
+
+			Table raw     = Table.read().csv(jhu.toFile());
+			Table earlier = firstDays(raw, raw.columnCount() - 9);
+			Table changed = earlier.dropRows(0);
+			changed.stringColumn("Country/Region").set(0, changed.stringColumn("Country/Region").get(0) + " (old)");
+			Table fullJhu = Covid19Charts.toTimeSeries(raw, "CONFIRMED").sortAscendingOn("DT", "REGION");
+			for (Table before : new Table[]{earlier, changed}) {
+				String key = before == earlier ? "jhu" : "jhu_changed";
+				store.update(key, Arrays.asList(Covid19Charts.regionNames(before)), (stored, from) -> Covid19Charts.toTimeSeries(before, "CONFIRMED", from));
+				Table incremental = store.update(key, Arrays.asList(Covid19Charts.regionNames(raw)), checkFrom(before == earlier, (stored, from) -> Covid19Charts.toTimeSeries(raw, "CONFIRMED", from)));
+				assertSame(fullJhu, incremental);
+			}
+
+			Table     cantons = Covid19Charts.SwissCharts.toCantonSeries(Table.read().csv(zh.toFile()));
+			LocalDate cut     = cantons.dateColumn("DT").max().minusDays(10);
+			Table     older   = cantons.where(cantons.dateColumn("DT").isBefore(cut));
+			String    first   = older.stringColumn("REGION").get(0);
+			String    second  = older.stringColumn("REGION").asSet().stream().filter(r -> !r.equals(first)).findFirst().get();
+			Table     renamed = older.where(older.stringColumn("REGION").isNotEqualTo(first));
+			renamed.stringColumn("REGION").set(renamed.stringColumn("REGION").isEqualTo(second), second + " (old)");
+			Table fullZh = Covid19Charts.fillMissingAtPrevious(cantons).sortAscendingOn("DT", "REGION");
+			for (Table before : new Table[]{older, renamed}) {
+				String key = before == older ? "zh" : "zh_changed";
+				store.update(key, before.stringColumn("REGION").asSet(), (stored, from) -> Covid19Charts.fillMissingAtPrevious(before, stored, from));
+				Table incremental = store.update(key, cantons.stringColumn("REGION").asSet(), checkFrom(before == older, (stored, from) -> Covid19Charts.fillMissingAtPrevious(cantons, stored, from)));
+				assertSame(fullZh, incremental);
+			}
+
+			List<String> regions = Arrays.asList(Covid19Charts.regionNames(raw));
+			Table        daily   = null;
+			for (int days = 20; days <= raw.columnCount() - 4; days++) {
+				Table input = firstDays(raw, days);
+				if (days % 4 == 0) store = new SeriesStore(tmp.resolve("store"), 3);
+				daily = store.update("jhu_daily", regions, checkFrom(days > 20, (stored, from) -> Covid19Charts.toTimeSeries(input, "CONFIRMED", from)));
+			}
+			assertSame(fullJhu, daily);
+			assertSame(fullJhu, new SeriesStore(tmp.resolve("store"), 3).load("jhu_daily"));
+			// a late revision inside the window, then its correction
+			Table revised = raw.copy();
+			revised.intColumn(revised.columnCount() - 2).set(0, revised.intColumn(revised.columnCount() - 2).getInt(0) + 1000);
+			assertSame(Covid19Charts.toTimeSeries(revised, "CONFIRMED").sortAscendingOn("DT", "REGION"),
+					store.update("jhu_daily", regions, checkFrom(true, (stored, from) -> Covid19Charts.toTimeSeries(revised, "CONFIRMED", from))));
+			assertSame(fullJhu, store.update("jhu_daily", regions, checkFrom(true, (stored, from) -> Covid19Charts.toTimeSeries(raw, "CONFIRMED", from))));
+			for (String key : new String[]{"jhu", "jhu_changed", "zh", "zh_changed", "jhu_daily"}) {
+				try (java.util.stream.Stream<Path> files = Files.list(tmp.resolve("store"))) {
+					long n = files.filter(f -> f.getFileName().toString().startsWith(key + ".")).count();
+					if (n != 3) throw new IllegalStateException(n + " files of " + key + " in the store");
+				}
+			}
+			System.out.println("Incremental updates match the full rebuild");
+
+			Table        wide        = wide(280, 1000, new Random(7));
+			List<String> wideRegions = Arrays.asList(Covid19Charts.regionNames(wide));
+			SeriesStore  running     = new SeriesStore(tmp.resolve("running"));
+			Table        initial     = firstDays(wide, 990);
+			running.update("jhu", wideRegions, (stored, from) -> Covid19Charts.toTimeSeries(initial, "CONFIRMED", from));
+			new SeriesStore(tmp.resolve("reopened")).update("jhu", wideRegions, (stored, from) -> Covid19Charts.toTimeSeries(initial, "CONFIRMED", from));
+			for (int days = 991; days <= 1000; days++) {
+				Table     input   = firstDays(wide, days);
+				Processor reshape = (stored, from) -> Covid19Charts.toTimeSeries(input, "CONFIRMED", from);
+				long      start   = System.nanoTime();
+				Covid19Charts.toTimeSeries(input, "CONFIRMED");
+				long full = System.nanoTime();
+				running.update("jhu", wideRegions, reshape);
+				long inProcess = System.nanoTime();
+				running.update("jhu", wideRegions, reshape);
+				long unchanged = System.nanoTime();
+				new SeriesStore(tmp.resolve("reopened")).update("jhu", wideRegions, reshape);
+				long reopened = System.nanoTime();
+				System.out.printf("280 x %d: full reshape %.1f ms; update with a new day %.1f ms, again without changes %.1f ms, of a reopened store %.1f ms%n",
+						days, (full - start) / 1e6, (inProcess - full) / 1e6, (unchanged - inProcess) / 1e6, (reopened - unchanged) / 1e6);
+			}
+		}
+
+		/**
+		 * {@code raw} restricted to its first {@code days} date columns (sharing the columns).
+		 */
+		private static Table firstDays(Table raw, int days) {
+			return Table.create(raw.name(), raw.columns().subList(0, 4 + days).toArray(new Column<?>[0]));
+		}
+
+		/**
+		 * JHU-shaped wide table built in memory.
+		 */
+		private static Table wide(int regions, int days, Random rnd) {
+			List<Column<?>> columns  = new ArrayList<>();
+			String[]        province = new String[regions];
+			String[]        country  = new String[regions];
+			for (int r = 0; r < regions; r++) {
+				province[r] = r % 2 == 1 ? "P" + r : "";
+				country[r] = "C" + r / 2;
+			}
+			columns.add(StringColumn.create("Province/State", province));
+			columns.add(StringColumn.create("Country/Region", country));
+			columns.add(DoubleColumn.create("Lat", new double[regions]));
+			columns.add(DoubleColumn.create("Long", new double[regions]));
+			int[] v = new int[regions];
+			for (int d = 0; d < days; d++) {
+				for (int r = 0; r < regions; r++) v[r] += rnd.nextInt(10);
+				columns.add(IntColumn.create(LocalDate.of(2020, 1, 22).plusDays(d).format(DateTimeFormatter.ofPattern("M/d/yy")), v.clone()));
+			}
+			return Table.create("jhu", columns.toArray(new Column<?>[0]));
+		}
+
+		/**
+		 * Fails unless the update is incremental (a window start is passed) exactly when {@code incremental}.
+		 */
+		private static Processor checkFrom(boolean incremental, Processor processor) {
+			return (stored, from) -> {
+				if ((from != null) != incremental) throw new IllegalStateException("Expected " + (incremental ? "an incremental update" : "a full rebuild"));
+				return processor.process(stored, from);
+			};
+		}
+
+		private static void assertSame(Table expected, Table actual) {
+			if (expected.rowCount() != actual.rowCount())
+				throw new IllegalStateException("Row count " + actual.rowCount() + " != " + expected.rowCount());
+			for (int c = 0; c < expected.columnCount(); c++) {
+				if (!expected.column(c).asList().equals(actual.column(c).asList()))
+					throw new IllegalStateException("Column " + expected.column(c).name() + " differs");
+			}
+		}
+
+		private static void writeFixtures(Path jhu, Path zh, int numDays, Random rnd) throws IOException {
+			LocalDate     start = LocalDate.of(2020, 1, 22);
+			StringBuilder wide  = new StringBuilder("Province/State,Country/Region,Lat,Long");
+			for (int d = 0; d < numDays; d++) {
+				wide.append(',').append(start.plusDays(d).format(DateTimeFormatter.ofPattern("M/d/yy")));
+			}
+			for (int r = 0; r < 20; r++) {
+				wide.append('\n').append(r % 2 == 1 ? "P" + r : "").append(",C").append(r / 2).append(",0,0");
+				for (int d = 0, v = 0; d < numDays; d++) {
+					wide.append(',').append(v += rnd.nextInt(10));
+				}
+			}
+			Files.write(jhu, wide.toString().getBytes(StandardCharsets.UTF_8));
+
+			StringBuilder lng = new StringBuilder("date,abbreviation_canton_and_fl,ncumul_conf,ncumul_deceased,current_hosp,current_icu,ncumul_released");
+			for (int r = 0; r < 26; r++) {
+				for (int d = rnd.nextInt(numDays / 2), v = 0; d < numDays; d++) {
+					v += rnd.nextInt(10);
+					if (rnd.nextInt(3) == 0) continue;
+					lng.append('\n').append(start.plusDays(d)).append(",K").append(r).append(',').append(v)
+					   .append(',').append(v / 20).append(',').append(rnd.nextInt(30)).append(',')
+					   .append(rnd.nextInt(4) == 0 ? "" : String.valueOf(rnd.nextInt(5))).append(',').append(v / 2);
+				}
+			}
+			Files.write(zh, lng.toString().getBytes(StandardCharsets.UTF_8));
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package charts;
+
+import org.jetbrains.annotations.Nullable;
+import tech.tablesaw.api.Table;
+import tech.tablesaw.io.csv.CsvReadOptions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Local cache of downloaded source files, keyed by URL. A file is re-downloaded only when the server reports a change
+ * (conditional request on ETag / Last-Modified, or a different last modified time for non-HTTP URLs such as file://);
+ * files marked immutable are never requested again once cached. Downloads run on a bounded pool.
+ */
+public class SourceCache {
+
+	public static final int DEFAULT_THREADS = 4;
+
+	private static final int TIMEOUT_MS = 60_000;
+
+	private static SourceCache shared;
+
+	private final Path            dir;
+	private final ExecutorService pool;
+
+	public SourceCache(Path dir, int threads) {
+		this.dir = dir;
+		this.pool = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "source-fetch");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Cache in the directory given by the {@code charts.cache.dir} system property, "cache" by default.
+	 */
+	public static synchronized SourceCache shared() {
+		if (shared == null) shared = new SourceCache(Paths.get(System.getProperty("charts.cache.dir", "cache")), DEFAULT_THREADS);
+		return shared;
+	}
+
+	private static String key(String url) {
+		try {
+			StringBuilder sb = new StringBuilder();
+			for (byte b : MessageDigest.getInstance("SHA-1").digest(url.getBytes(StandardCharsets.UTF_8))) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Returns the local copy of {@code url}, downloading it first if it is not cached or has changed.
+	 *
+	 * @param immutable if true and the file is cached, the server is not contacted at all
+	 */
+	public Path fetch(String url, boolean immutable) throws IOException {
+		try (RunReport.Stage stage = RunReport.stage("download", url)) {
+			return fetch(url, immutable, stage);
+		}
+	}
+
+	private Path fetch(String url, boolean immutable, RunReport.Stage stage) throws IOException {
+		String     key    = key(url);
+		Path       data   = dir.resolve(key + ".data");
+		Path       meta   = dir.resolve(key + ".properties");
+		Properties cached = null;
+		if (Files.exists(data) && Files.exists(meta)) {
+			cached = new Properties();
+			try (InputStream in = Files.newInputStream(meta)) {
+				cached.load(in);
+			}
+			stage.bytesIn(0).bytesOut(Files.size(data));
+			if (immutable) return data;
+		}
+
+		URLConnection c = new URL(url).openConnection();
+		c.setConnectTimeout(TIMEOUT_MS);
+		c.setReadTimeout(TIMEOUT_MS);
+		long lastModified = cached == null ? 0 : Long.parseLong(cached.getProperty("lastModified", "0"));
+		if (cached != null) {
+			if (cached.getProperty("etag") != null) c.setRequestProperty("If-None-Match", cached.getProperty("etag"));
+			if (lastModified > 0) c.setIfModifiedSince(lastModified);
+		}
+		if (c instanceof HttpURLConnection) {
+			int code = ((HttpURLConnection) c).getResponseCode();
+			if (code == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) return data;
+			if (code >= 400) throw new IOException("Download of " + url + " failed with HTTP " + code);
+		} else if (cached != null && lastModified > 0 && c.getLastModified() == lastModified) {
+			return data;
+		}
+
+		Files.createDirectories(dir);
+		Path tmp = Files.createTempFile(dir, key, ".tmp");
+		try (InputStream in = c.getInputStream()) {
+			long size = Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+			stage.bytesIn(size).bytesOut(size);
+		}
+		Files.move(tmp, data, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		Properties p = new Properties();
+		p.setProperty("url", url);
+		if (c.getHeaderField("ETag") != null) p.setProperty("etag", c.getHeaderField("ETag"));
+		p.setProperty("lastModified", Long.toString(c.getLastModified()));
+		tmp = Files.createTempFile(dir, key, ".tmp");
+		try (OutputStream out = Files.newOutputStream(tmp)) {
+			p.store(out, null);
+		}
+		Files.move(tmp, meta, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return data;
+	}
+
+	public Table readCsv(String url, boolean immutable) throws IOException {
+		return readCsv(url, immutable, null);
+	}
+
+	/**
+	 * Parses the local copy of {@code url} with {@code schema}, or with Tablesaw's type inference if it is null. Rows
+	 * that do not fit the schema are printed.
+	 */
+	public Table readCsv(String url, boolean immutable, @Nullable CsvSchema schema) throws IOException {
+		Path   file = fetch(url, immutable);
+		String name = url.substring(url.lastIndexOf('/') + 1);
+		try (RunReport.Stage stage = RunReport.stage("parse", url)) {
+			Table t;
+			if (schema != null) {
+				CsvSchema.Result result = schema.read(file, name);
+				if (result.malformedRows > 0) System.out.println("Malformed rows in " + url + ": " + result);
+				t = result.table;
+			} else {
+				t = Table.read().usingOptions(CsvReadOptions.builder(file.toFile()).tableName(name));
+			}
+			stage.bytesIn(Files.size(file)).rows(t.rowCount());
+			return t;
+		}
+	}
+
+	/**
+	 * Downloads (if needed) and parses {@code url} on the fetch pool.
+	 */
+	public Future<Table> submitCsv(String url, boolean immutable) {
+		return submitCsv(url, immutable, null);
+	}
+
+	/**
+	 * Same as {@link #submitCsv(String, boolean)}, parsing with {@code schema}.
+	 */
+	public Future<Table> submitCsv(String url, boolean immutable, @Nullable CsvSchema schema) {
+		return pool.submit(() -> readCsv(url, immutable, schema));
+	}
+
+	/**
+	 * Runs {@code task} (e.g. a download followed by its processing) on the fetch pool.
+	 */
+	public <T> Future<T> submit(Callable<T> task) {
+		return pool.submit(task);
+	}
+
+	/**
+	 * Waits for a result of {@link #submitCsv(String, boolean)}, rethrowing a download failure as IOException.
+	 */
+	public static <T> T get(Future<T> f) throws IOException {
+		try {
+			return f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+}
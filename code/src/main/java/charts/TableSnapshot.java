@@ -0,0 +1,291 @@
+package charts;
+
+import tech.tablesaw.api.*;
+import tech.tablesaw.columns.Column;
+import tech.tablesaw.columns.dates.PackedLocalDate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact binary columnar snapshot of processed tables (STRING, LOCAL_DATE, INTEGER and DOUBLE columns).
+ * <ul>
+ * <li>STRING columns are dictionary encoded: the distinct values once, then a varint id per row.</li>
+ * <li>LOCAL_DATE columns store the zigzag varint delta of the epoch day to the previous row.</li>
+ * <li>INTEGER columns store the zigzag varint delta to the previous row, so slowly growing counters take 1-2 bytes.</li>
+ * <li>DOUBLE columns holding whole numbers are encoded like INTEGER columns; other values (NaN, fractions) are
+ * stored as raw 8 bytes behind a flag bit.</li>
+ * </ul>
+ * Snapshots are read with one bulk read into a heap buffer and round-trip exactly (including missing values).
+ */
+public class TableSnapshot {
+
+	private static final int MAGIC   = 0x43565331; // "CVS1"
+	private static final int VERSION = 1;
+
+	private static final byte STRING     = 1;
+	private static final byte LOCAL_DATE = 2;
+	private static final byte INTEGER    = 3;
+	private static final byte DOUBLE     = 4;
+
+	public static void write(Table t, Path path) throws IOException {
+		Sink out = new Sink(1024 + t.rowCount() * t.columnCount() * 2);
+		out.putInt(MAGIC);
+		out.putVar(VERSION);
+		out.putString(t.name() == null ? "" : t.name());
+		out.putVar(t.columnCount());
+		out.putVar(t.rowCount());
+		for (Column<?> c : t.columns()) {
+			out.putString(c.name());
+			if (c instanceof StringColumn) {
+				out.put(STRING);
+				writeStrings((StringColumn) c, out);
+			} else if (c instanceof DateColumn) {
+				out.put(LOCAL_DATE);
+				writeDates((DateColumn) c, out);
+			} else if (c instanceof IntColumn) {
+				out.put(INTEGER);
+				writeInts((IntColumn) c, out);
+			} else if (c instanceof DoubleColumn) {
+				out.put(DOUBLE);
+				writeDoubles((DoubleColumn) c, out);
+			} else {
+				throw new IllegalArgumentException("Unsupported column type " + c.type() + " of column " + c.name());
+			}
+		}
+
+		Path dir = path.toAbsolutePath().getParent();
+		Files.createDirectories(dir);
+		Path tmp = Files.createTempFile(dir, path.getFileName().toString(), ".tmp");
+		try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+			ByteBuffer b = ByteBuffer.wrap(out.bytes, 0, out.size);
+			while (b.hasRemaining()) ch.write(b);
+		}
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	public static Table read(Path path) throws IOException {
+		// read into the heap rather than mapping: a mapping outlives the channel, and on Windows a mapped file cannot be
+		// replaced by the next write of the same snapshot
+		ByteBuffer in;
+		try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = ch.size();
+			if (size > Integer.MAX_VALUE) throw new IOException("Snapshot too large: " + path);
+			in = ByteBuffer.allocate((int) size);
+			while (in.hasRemaining()) {
+				if (ch.read(in) < 0) throw new IOException("Truncated snapshot: " + path);
+			}
+			in.flip();
+		}
+		if (in.getInt() != MAGIC) throw new IOException("Not a table snapshot: " + path);
+		int version = (int) getVar(in);
+		if (version != VERSION) throw new IOException("Unsupported snapshot version " + version + ": " + path);
+		Table t       = Table.create(getString(in));
+		int   columns = (int) getVar(in);
+		int   rows    = (int) getVar(in);
+		for (int i = 0; i < columns; i++) {
+			String name = getString(in);
+			byte   type = in.get();
+			switch (type) {
+				case STRING:
+					t.addColumns(readStrings(name, rows, in));
+					break;
+				case LOCAL_DATE:
+					t.addColumns(readDates(name, rows, in));
+					break;
+				case INTEGER:
+					t.addColumns(readInts(name, rows, in));
+					break;
+				case DOUBLE:
+					t.addColumns(readDoubles(name, rows, in));
+					break;
+				default:
+					throw new IOException("Unknown column type " + type + " in " + path);
+			}
+		}
+		return t;
+	}
+
+	private static void writeStrings(StringColumn c, Sink out) {
+		Map<String, Integer> ids    = new HashMap<>();
+		int[]                rowIds = new int[c.size()];
+		for (int r = 0; r < c.size(); r++) {
+			Integer id = ids.get(c.get(r));
+			if (id == null) {
+				id = ids.size();
+				ids.put(c.get(r), id);
+			}
+			rowIds[r] = id;
+		}
+		String[] dictionary = new String[ids.size()];
+		for (Map.Entry<String, Integer> e : ids.entrySet()) dictionary[e.getValue()] = e.getKey();
+		out.putVar(dictionary.length);
+		for (String s : dictionary) out.putString(s);
+		for (int id : rowIds) out.putVar(id);
+	}
+
+	private static StringColumn readStrings(String name, int rows, ByteBuffer in) {
+		String[] dictionary = new String[(int) getVar(in)];
+		for (int i = 0; i < dictionary.length; i++) dictionary[i] = getString(in);
+		String[] values = new String[rows];
+		for (int r = 0; r < rows; r++) values[r] = dictionary[(int) getVar(in)];
+		return StringColumn.create(name, values);
+	}
+
+	// dates and doubles: the lowest bit of each code flags a missing (date) or non-integral (double) value
+
+	private static void writeDates(DateColumn c, Sink out) {
+		long prev = 0;
+		for (int r = 0; r < c.size(); r++) {
+			if (c.isMissing(r)) {
+				out.putVar(1);
+				continue;
+			}
+			long day = PackedLocalDate.toEpochDay(c.getIntInternal(r));
+			out.putVar(zigzag(day - prev) << 1);
+			prev = day;
+		}
+	}
+
+	private static DateColumn readDates(String name, int rows, ByteBuffer in) {
+		DateColumn c    = DateColumn.create(name, rows);
+		long       prev = 0;
+		for (int r = 0; r < rows; r++) {
+			long code = getVar(in);
+			if ((code & 1) != 0) continue;
+			prev += unzigzag(code >>> 1);
+			c.set(r, PackedLocalDate.pack(LocalDate.ofEpochDay(prev)));
+		}
+		return c;
+	}
+
+	private static void writeInts(IntColumn c, Sink out) {
+		long prev = 0;
+		for (int r = 0; r < c.size(); r++) {
+			long v = c.getInt(r);
+			out.putVar(zigzag(v - prev));
+			prev = v;
+		}
+	}
+
+	private static IntColumn readInts(String name, int rows, ByteBuffer in) {
+		int[] values = new int[rows];
+		long  prev   = 0;
+		for (int r = 0; r < rows; r++) {
+			prev += unzigzag(getVar(in));
+			values[r] = (int) prev;
+		}
+		return IntColumn.create(name, values);
+	}
+
+	private static void writeDoubles(DoubleColumn c, Sink out) {
+		long prev = 0;
+		for (int r = 0; r < c.size(); r++) {
+			double v = c.getDouble(r);
+			long   l = (long) v;
+			if (Double.doubleToRawLongBits(v) == Double.doubleToRawLongBits((double) l) && Math.abs(l) < (1L << 52)) {
+				out.putVar(zigzag(l - prev) << 1);
+				prev = l;
+			} else {
+				out.putVar(1);
+				out.putLong(Double.doubleToRawLongBits(v));
+			}
+		}
+	}
+
+	private static DoubleColumn readDoubles(String name, int rows, ByteBuffer in) {
+		double[] values = new double[rows];
+		long     prev   = 0;
+		for (int r = 0; r < rows; r++) {
+			long code = getVar(in);
+			if ((code & 1) != 0) {
+				values[r] = Double.longBitsToDouble(in.getLong());
+			} else {
+				prev += unzigzag(code >>> 1);
+				values[r] = prev;
+			}
+		}
+		return DoubleColumn.create(name, values);
+	}
+
+	private static long zigzag(long v) {
+		return (v << 1) ^ (v >> 63);
+	}
+
+	private static long unzigzag(long v) {
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	private static long getVar(ByteBuffer in) {
+		long result = 0;
+		for (int shift = 0; ; shift += 7) {
+			byte b = in.get();
+			result |= (long) (b & 0x7F) << shift;
+			if (b >= 0) return result;
+		}
+	}
+
+	private static String getString(ByteBuffer in) {
+		byte[] b = new byte[(int) getVar(in)];
+		in.get(b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Growable byte buffer the snapshot is encoded into.
+	 */
+	private static class Sink {
+		byte[] bytes;
+		int    size;
+
+		Sink(int capacity) {
+			bytes = new byte[capacity];
+		}
+
+		private void ensure(int extra) {
+			if (size + extra > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+		}
+
+		void put(byte b) {
+			ensure(1);
+			bytes[size++] = b;
+		}
+
+		void putInt(int v) {
+			ensure(4);
+			for (int i = 3; i >= 0; i--) bytes[size++] = (byte) (v >>> (i * 8));
+		}
+
+		void putLong(long v) {
+			ensure(8);
+			for (int i = 7; i >= 0; i--) bytes[size++] = (byte) (v >>> (i * 8));
+		}
+
+		void putVar(long v) {
+			ensure(10);
+			while ((v & ~0x7FL) != 0) {
+				bytes[size++] = (byte) ((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			bytes[size++] = (byte) v;
+		}
+
+		void putString(String s) {
+			byte[] b = s.getBytes(StandardCharsets.UTF_8);
+			putVar(b.length);
+			ensure(b.length);
+			System.arraycopy(b, 0, bytes, size, b.length);
+			size += b.length;
+		}
+	}
+}
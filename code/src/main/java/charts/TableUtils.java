@@ -1,22 +1,32 @@
 package charts;
 
 import org.jetbrains.annotations.Nullable;
+import tech.tablesaw.api.DateColumn;
 import tech.tablesaw.api.IntColumn;
 import tech.tablesaw.api.NumericColumn;
+import tech.tablesaw.api.StringColumn;
 import tech.tablesaw.api.Table;
+import tech.tablesaw.columns.Column;
+import tech.tablesaw.columns.dates.PackedLocalDate;
 import tech.tablesaw.plotly.components.Axis;
 import tech.tablesaw.plotly.components.Figure;
 import tech.tablesaw.plotly.components.Layout;
 import tech.tablesaw.plotly.traces.ScatterTrace;
+import tech.tablesaw.selection.Selection;
+import tech.tablesaw.table.TableSlice;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.IntUnaryOperator;
 
 
 public class TableUtils {
 
-	private static final int[] CHART_DIMENSIONS = {1280, 720};
+	static final int[] CHART_DIMENSIONS = {1280, 720};
 
 	public static Layout.LayoutBuilder applySettings(Layout.LayoutBuilder lb) {
 		return lb.width(CHART_DIMENSIONS[0])
@@ -29,13 +39,27 @@ public class TableUtils {
 	                                    @Nullable ScatterTrace.Mode[] modes,
 	                                    @Nullable String title,
 	                                    @Nullable String yTitle) {
+		return timeSeriesPlot(t, xColName, yColNames, modes, title, yTitle, null);
+	}
+
+	/**
+	 * Same as {@link #timeSeriesPlot(Table, String, String[], ScatterTrace.Mode[], String, String)}, with every trace
+	 * reduced to the point budget of {@code downsampler}.
+	 */
+	public static Figure timeSeriesPlot(Table t,
+	                                    String xColName,
+	                                    String[] yColNames,
+	                                    @Nullable ScatterTrace.Mode[] modes,
+	                                    @Nullable String title,
+	                                    @Nullable String yTitle,
+	                                    @Nullable Downsampler downsampler) {
 		Layout.LayoutBuilder l = applySettings(Layout.builder(title != null ? title : "", xColName)
 		                                             .yAxis(Axis.builder().title(yTitle != null ? yTitle : "").build()));
 
 		ScatterTrace[] traces = new ScatterTrace[yColNames.length];
 		for (int i = 0; i < traces.length; i++) {
 			ScatterTrace.Mode mode = modes != null && modes.length > 0 ? modes.length > 1 ? modes[i] : modes[0] : ScatterTrace.Mode.LINE;
-			traces[i] = ScatterTrace.builder(t.column(xColName), t.numberColumn(yColNames[i]))
+			traces[i] = trace(t, xColName, yColNames[i], downsampler)
 			                        .showLegend(true)
 			                        .name(yColNames[i])
 			                        .mode(mode)
@@ -51,6 +75,20 @@ public class TableUtils {
 	                                    @Nullable ScatterTrace.Mode[][] modes,
 	                                    @Nullable String title,
 	                                    @Nullable String[] yTitle) {
+		return timeSeriesPlot(t, xColName, yColNames, modes, title, yTitle, null);
+	}
+
+	/**
+	 * Same as {@link #timeSeriesPlot(Table, String, String[][], ScatterTrace.Mode[][], String, String[])}, with every
+	 * trace reduced to the point budget of {@code downsampler}.
+	 */
+	public static Figure timeSeriesPlot(Table t,
+	                                    String xColName,
+	                                    String[][] yColNames,
+	                                    @Nullable ScatterTrace.Mode[][] modes,
+	                                    @Nullable String title,
+	                                    @Nullable String[] yTitle,
+	                                    @Nullable Downsampler downsampler) {
 		Layout.LayoutBuilder l = applySettings(Layout.builder(title != null ? title : "", xColName)
 		                                             .yAxis(Axis.builder().title(yTitle != null ? yTitle[0] : "").build()));
 
@@ -60,7 +98,7 @@ public class TableUtils {
 		for (int y = 0; y < yColNames.length; y++) {
 			for (int i = 0; i < yColNames[y].length; i++) {
 				ScatterTrace.Mode mode = modes != null && modes.length > 0 ? modes.length > 1 ? modes[y][i] : modes[0][0] : ScatterTrace.Mode.LINE;
-				ScatterTrace.ScatterBuilder builder = ScatterTrace.builder(t.column(xColName), t.numberColumn(yColNames[y][i]))
+				ScatterTrace.ScatterBuilder builder = trace(t, xColName, yColNames[y][i], downsampler)
 				                                                  .showLegend(true)
 				                                                  .name(yColNames[y][i])
 				                                                  .mode(mode);
@@ -72,6 +110,33 @@ public class TableUtils {
 		return new Figure(l.build(), traces.toArray(new ScatterTrace[0]));
 	}
 
+	private static ScatterTrace.ScatterBuilder trace(Table t, String xColName, String yColName, @Nullable Downsampler downsampler) {
+		Column<?>        x = t.column(xColName);
+		NumericColumn<?> y = t.numberColumn(yColName);
+		if (downsampler == null) return ScatterTrace.builder(x, y);
+		int[] kept = downsampler.select(axisValues(x), y.asDoubleArray());
+		return kept.length == x.size() ? ScatterTrace.builder(x, y) : ScatterTrace.builder(x.subset(kept), y.subset(kept));
+	}
+
+	/**
+	 * Positions on the x axis as numbers: epoch days of a date column, the values of a numeric one, the row index
+	 * otherwise.
+	 */
+	static double[] axisValues(Column<?> x) {
+		double[] out = new double[x.size()];
+		if (x instanceof DateColumn) {
+			DateColumn dates = (DateColumn) x;
+			for (int r = 0; r < out.length; r++) {
+				out[r] = PackedLocalDate.toEpochDay(dates.getIntInternal(r));
+			}
+		} else if (x instanceof NumericColumn) {
+			out = ((NumericColumn<?>) x).asDoubleArray();
+		} else {
+			for (int r = 0; r < out.length; r++) out[r] = r;
+		}
+		return out;
+	}
+
 	public static IntColumn apply(IntColumn col, IntUnaryOperator f) {
 		for(int i=0; i<col.size(); i++) {
 			col.set(i, f.applyAsInt(col.getInt(i)));
@@ -79,14 +144,150 @@ public class TableUtils {
 		return col;
 	}
 
+	/**
+	 * Daily increase of a cumulative column, see {@link SeriesKernels#increase(double[], boolean)}.
+	 */
 	public static IntColumn d1(NumericColumn<?> c, String name) {
-	    IntColumn increase = IntColumn.create(name);
-	    int previous = 0;
-	    for (int r = 0; r < c.size(); r++) {
-	        int x = (int) c.getDouble(r);
-	        increase.append(x - previous);
-	        previous = x;
-	    }
-	    return increase;
+		return IntColumn.create(name, SeriesKernels.increase(c.asDoubleArray(), false));
+	}
+
+	/**
+	 * Groups the rows of a long table by region: the table is reordered once into contiguous per-region slices sorted
+	 * by DT, and the last date and the maximum of {@code maxColumns} are collected per region in the same pass.
+	 * Replaces one full-table {@code where(REGION == r)} scan per region.
+	 */
+	public static RegionGroups groupByRegion(Table t, String... maxColumns) {
+		return new RegionGroups(t, maxColumns);
+	}
+
+	public static class RegionGroups {
+		private final Table                sorted;
+		private final String[]             regions;
+		private final Map<String, Integer> index = new HashMap<>();
+		private final int[]                offsets;
+		private final int[]                lastDay;
+		private final List<String>         maxColumns;
+		private final double[][]           max;
+
+		private RegionGroups(Table t, String... maxColumns) {
+			StringColumn regionCol = t.stringColumn("REGION");
+			DateColumn   dateCol   = t.dateColumn("DT");
+			int          rows      = t.rowCount();
+
+			int[]        rowGroup = new int[rows];
+			List<String> names    = new ArrayList<>();
+			int[]        counts   = new int[16];
+			for (int r = 0; r < rows; r++) {
+				Integer g = index.get(regionCol.get(r));
+				if (g == null) {
+					g = names.size();
+					index.put(regionCol.get(r), g);
+					names.add(regionCol.get(r));
+					if (g == counts.length) counts = Arrays.copyOf(counts, g * 2);
+				}
+				rowGroup[r] = g;
+				counts[g]++;
+			}
+			regions = names.toArray(new String[0]);
+			offsets = new int[regions.length + 1];
+			for (int g = 0; g < regions.length; g++) {
+				offsets[g + 1] = offsets[g] + counts[g];
+			}
+
+			// bucket rows by region, then order each bucket by date: key = day << 32 | source row
+			long[] keys = new long[rows];
+			int[]  fill = Arrays.copyOf(offsets, regions.length);
+			for (int r = 0; r < rows; r++) {
+				long day = dateCol.isMissing(r) ? Integer.MIN_VALUE : PackedLocalDate.toEpochDay(dateCol.getIntInternal(r));
+				keys[fill[rowGroup[r]]++] = day << 32 | r;
+			}
+			int[] order = new int[rows];
+			lastDay = new int[regions.length];
+			for (int g = 0; g < regions.length; g++) {
+				Arrays.sort(keys, offsets[g], offsets[g + 1]);
+				for (int i = offsets[g]; i < offsets[g + 1]; i++) {
+					order[i] = (int) keys[i];
+				}
+				lastDay[g] = offsets[g + 1] > offsets[g] ? (int) (keys[offsets[g + 1] - 1] >> 32) : Integer.MIN_VALUE;
+			}
+			// Table.rows(int...) goes through a Selection, which would restore the source order
+			sorted = Table.create(t.name());
+			for (Column<?> c : t.columns()) {
+				sorted.addColumns(c.subset(order));
+			}
+
+			this.maxColumns = Arrays.asList(maxColumns);
+			max = new double[maxColumns.length][regions.length];
+			for (int c = 0; c < maxColumns.length; c++) {
+				NumericColumn<?> col = sorted.numberColumn(maxColumns[c]);
+				for (int g = 0; g < regions.length; g++) {
+					double m = Double.NaN;
+					for (int i = offsets[g]; i < offsets[g + 1]; i++) {
+						double v = col.getDouble(i);
+						if (!Double.isNaN(v) && (Double.isNaN(m) || v > m)) m = v;
+					}
+					max[c][g] = m;
+				}
+			}
+		}
+
+		public int size() {
+			return regions.length;
+		}
+
+		public String region(int g) {
+			return regions[g];
+		}
+
+		/**
+		 * Group of {@code region}, -1 if the table has no rows for it.
+		 */
+		public int indexOf(String region) {
+			Integer g = index.get(region);
+			return g == null ? -1 : g;
+		}
+
+		/**
+		 * The input rows ordered by region, then DT; the rows of group {@code g} are {@code [start(g), end(g))}.
+		 */
+		public Table sorted() {
+			return sorted;
+		}
+
+		public int start(int g) {
+			return offsets[g];
+		}
+
+		public int end(int g) {
+			return offsets[g + 1];
+		}
+
+		/**
+		 * Zero-copy view of the rows of group {@code g}.
+		 */
+		public TableSlice view(int g) {
+			return new TableSlice(sorted, Selection.withRange(offsets[g], offsets[g + 1]));
+		}
+
+		/**
+		 * The rows of group {@code g} as a table of their own, e.g. to add derived columns for a chart.
+		 */
+		public Table table(int g) {
+			return sorted.inRange(offsets[g], offsets[g + 1]);
+		}
+
+		@Nullable
+		public LocalDate lastDate(int g) {
+			return lastDay[g] == Integer.MIN_VALUE ? null : LocalDate.ofEpochDay(lastDay[g]);
+		}
+
+		/**
+		 * Maximum of a column passed to {@link #groupByRegion(Table, String...)} over group {@code g}.
+		 */
+		public double max(int g, String column) {
+			int c = maxColumns.indexOf(column);
+			if (c < 0) throw new IllegalArgumentException("Maximum of " + column + " was not computed");
+			return max[c][g];
+		}
 	}
 }
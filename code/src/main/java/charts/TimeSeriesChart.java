@@ -0,0 +1,321 @@
+package charts;
+
+import org.jetbrains.annotations.Nullable;
+import tech.tablesaw.api.DateColumn;
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.IntColumn;
+import tech.tablesaw.api.Table;
+import tech.tablesaw.columns.dates.PackedLocalDate;
+import tech.tablesaw.plotly.components.Figure;
+import tech.tablesaw.plotly.traces.ScatterTrace;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The arguments of {@link TableUtils#timeSeriesPlot(Table, String, String[][], ScatterTrace.Mode[][], String, String[])}
+ * kept as data, so a page can either render them as Tablesaw figures or write them in the compact format of
+ * {@link WebUtils#toCompactHtml(String, TimeSeriesChart...)}. The x column must be a date column.
+ */
+public class TimeSeriesChart {
+
+	final Table                 t;
+	final String                xColName;
+	final String[][]            yColNames;
+	final ScatterTrace.Mode[][] modes;
+	final String                title;
+	final String[]              yTitle;
+	private String              key;
+	private Downsampler         downsampler;
+
+	public TimeSeriesChart(Table t,
+	                       String xColName,
+	                       String[][] yColNames,
+	                       @Nullable ScatterTrace.Mode[][] modes,
+	                       @Nullable String title,
+	                       @Nullable String[] yTitle) {
+		this.t = t;
+		this.xColName = xColName;
+		this.yColNames = yColNames;
+		this.modes = modes;
+		this.title = title;
+		this.yTitle = yTitle;
+	}
+
+	/**
+	 * Sets a stable identifier of the chart (e.g. the region) used to name its data file in multi-page output.
+	 */
+	public TimeSeriesChart key(String key) {
+		this.key = key;
+		return this;
+	}
+
+	/**
+	 * Sets the point budget of every trace, or none (all points) if null.
+	 */
+	public TimeSeriesChart downsample(@Nullable Downsampler downsampler) {
+		this.downsampler = downsampler;
+		return this;
+	}
+
+	public String key() {
+		return key != null ? key : title();
+	}
+
+	/**
+	 * File name of the chart data in multi-page output, derived from {@link #key()}.
+	 */
+	public String fileName() {
+		return key().replaceAll("[^A-Za-z0-9]+", "_") + "-" + Integer.toHexString(key().hashCode()) + ".json";
+	}
+
+	/**
+	 * Hash over everything that is rendered: titles, series names and modes, dates and values.
+	 */
+	public String dataHash() {
+		try {
+			MessageDigest md  = MessageDigest.getInstance("SHA-1");
+			ByteBuffer    buf = ByteBuffer.allocate(8);
+			md.update((title() + '\u0000' + xColName + '\u0000' + yTitle(0) + '\u0000' + (yColNames.length > 1 ? yTitle(1) : "") + '\u0000' + downsampler).getBytes(StandardCharsets.UTF_8));
+			for (int d : epochDays()) {
+				buf.clear();
+				md.update(buf.putInt(0, d).array(), 0, 4);
+			}
+			for (int y = 0; y < yColNames.length; y++) {
+				for (int i = 0; i < yColNames[y].length; i++) {
+					md.update(('\u0000' + yColNames[y][i] + '\u0000' + y + mode(y, i)).getBytes(StandardCharsets.UTF_8));
+					for (double v : values(y, i)) {
+						md.update(buf.putLong(0, Double.doubleToLongBits(v)).array());
+					}
+				}
+			}
+			StringBuilder sb = new StringBuilder();
+			for (byte b : md.digest()) sb.append(String.format("%02x", b));
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public Figure toFigure() {
+		return TableUtils.timeSeriesPlot(t, xColName, yColNames, modes, title, yTitle, downsampler);
+	}
+
+	public String title() {
+		return title != null ? title : "";
+	}
+
+	public String yTitle(int axis) {
+		if (yTitle != null) return yTitle[axis];
+		return axis == 0 ? "" : "Y2";
+	}
+
+	public ScatterTrace.Mode mode(int y, int i) {
+		return modes != null && modes.length > 0 ? modes.length > 1 ? modes[y][i] : modes[0][0] : ScatterTrace.Mode.LINE;
+	}
+
+	public int[] epochDays() {
+		DateColumn x    = t.dateColumn(xColName);
+		int[]      days = new int[x.size()];
+		for (int r = 0; r < days.length; r++) {
+			days[r] = (int) PackedLocalDate.toEpochDay(x.getIntInternal(r));
+		}
+		return days;
+	}
+
+	public double[] values(int y, int i) {
+		return t.numberColumn(yColNames[y][i]).asDoubleArray();
+	}
+
+	/**
+	 * Rows of the trace left after downsampling, or null if it keeps all of them.
+	 */
+	@Nullable
+	public int[] keptRows(int y, int i) {
+		if (downsampler == null) return null;
+		int[] kept = downsampler.select(TableUtils.axisValues(t.column(xColName)), values(y, i));
+		return kept.length == t.rowCount() ? null : kept;
+	}
+
+	/**
+	 * Renders charts with gaps in the dates, missing, fractional and whole-number values and a downsampled chart through
+	 * {@link WebUtils#toCompactHtml(String, TimeSeriesChart...)}, decodes the embedded data the way the page script does
+	 * and checks that every trace has the same name, mode, axis, dates and values as the (kept rows of the) source
+	 * table.
+	 */
+	private static class TestCompactEquivalence {
+		public static void main(String[] args) {
+			DateColumn dt = DateColumn.create("DT");
+			for (int d = 0; d < 40; d++) {
+				if (d % 7 != 3) dt.append(LocalDate.of(2020, 2, 20).plusDays(d));
+			}
+			double[] confirmed = new double[dt.size()], ratio = new double[dt.size()];
+			for (int i = 0; i < confirmed.length; i++) {
+				confirmed[i] = i * i * 13;
+				ratio[i] = i % 5 == 0 ? Double.NaN : i / 3.0;
+			}
+			Table gaps = Table.create(dt, DoubleColumn.create("CONFIRMED", confirmed), DoubleColumn.create("RATIO", ratio));
+			Table dense = Table.create(DateColumn.create("DT"), IntColumn.create("NEW"));
+			for (int d = 0; d < 10; d++) {
+				dense.dateColumn(0).append(LocalDate.of(2020, 3, 1).plusDays(d));
+				dense.intColumn(1).append(d % 3 - 1);
+			}
+			Table longSeries = Table.create(DateColumn.create("DT"), DoubleColumn.create("CONFIRMED"), DoubleColumn.create("AVG"));
+			for (int d = 0; d < 400; d++) {
+				longSeries.dateColumn(0).append(LocalDate.of(2020, 1, 22).plusDays(d));
+				longSeries.doubleColumn(1).append(d * d + (d % 10 == 0 ? 5000 : 0));
+				longSeries.doubleColumn(2).append(d < 6 ? Double.NaN : Math.sin(d / 9.0) * 100 + d / 7.0);
+			}
+			TimeSeriesChart[] charts = {
+					new TimeSeriesChart(gaps, "DT", new String[][]{{"CONFIRMED"}, {"RATIO"}},
+							new ScatterTrace.Mode[][]{{ScatterTrace.Mode.LINE_AND_MARKERS}, {ScatterTrace.Mode.LINE}}, "1. \"A\" </script>", new String[]{"TOTAL", "RATIO"}),
+					new TimeSeriesChart(dense, "DT", new String[][]{{"NEW"}}, null, null, null),
+					new TimeSeriesChart(longSeries, "DT", new String[][]{{"CONFIRMED"}, {"AVG"}}, null, "Downsampled", null).downsample(new Downsampler(60, 30))};
+
+			String  html    = WebUtils.toCompactHtml("<p>test</p>", charts);
+			String  data    = html.substring(html.indexOf("var charts = ") + "var charts = ".length(), html.indexOf("];\n", html.indexOf("var charts = ")) + 1);
+			List<?> decoded = (List<?>) new Json(data).value();
+			Matcher start   = Pattern.compile("Date.UTC\\((\\d+), (\\d+), (\\d+)\\)").matcher(html);
+			if (!start.find()) throw new IllegalStateException("No axis start");
+			LocalDate axisStart = LocalDate.of(Integer.parseInt(start.group(1)), Integer.parseInt(start.group(2)) + 1, Integer.parseInt(start.group(3)));
+
+			for (int k = 0; k < charts.length; k++) {
+				Map<?, ?> c = (Map<?, ?>) decoded.get(k);
+				check(charts[k].title(), c.get("t"), "title");
+				Map<?, ?>  x     = (Map<?, ?>) c.get("x");
+				int[]      days  = charts[k].epochDays();
+				List<Long> index = new ArrayList<>();
+				if (x.containsKey("i")) {
+					long acc = 0;
+					for (Object o : (List<?>) x.get("i")) index.add(acc += (Long) o);
+				} else {
+					for (long i = 0; i < (Long) x.get("n"); i++) index.add((Long) x.get("s") + i);
+				}
+				check(days.length, index.size(), "number of dates");
+				for (int i = 0; i < days.length; i++) {
+					check(LocalDate.ofEpochDay(days[i]), axisStart.plusDays(index.get(i)), "date " + i);
+				}
+				List<?> series = (List<?>) c.get("s");
+				int     n      = 0;
+				for (int y = 0; y < charts[k].yColNames.length; y++) {
+					for (int i = 0; i < charts[k].yColNames[y].length; i++, n++) {
+						Map<?, ?> s = (Map<?, ?>) series.get(n);
+						check(charts[k].yColNames[y][i], s.get("n"), "name");
+						check(charts[k].mode(y, i) == ScatterTrace.Mode.LINE ? "lines" : "lines+markers", s.get("m"), "mode");
+						check(y == 1, s.containsKey("y2"), "axis");
+						double[] expected = charts[k].values(y, i);
+						List<?>  v        = (List<?>) s.get("v");
+						double   acc      = 0;
+						int[]    kept     = charts[k].keptRows(y, i);
+						check(kept != null, s.containsKey("k"), "downsampling");
+						if (kept != null) {
+							long position = 0;
+							for (int j = 0; j < kept.length; j++) {
+								check((long) kept[j], position += (Long) ((List<?>) s.get("k")).get(j), "position " + j);
+							}
+							if (kept.length > 60) throw new IllegalStateException(s.get("n") + ": " + kept.length + " points");
+							double[] subset = new double[kept.length];
+							for (int j = 0; j < kept.length; j++) subset[j] = expected[kept[j]];
+							expected = subset;
+						}
+						check(expected.length, v.size(), "number of values");
+						for (int j = 0; j < expected.length; j++) {
+							Object o = v.get(j);
+							double actual = o == null ? Double.NaN : ((Number) o).doubleValue();
+							if (s.containsKey("d")) actual = acc += actual;
+							if (Double.compare(expected[j], actual) != 0 && Math.abs(expected[j] - actual) > 1e-12)
+								throw new IllegalStateException(s.get("n") + "[" + j + "]: " + actual + " != " + expected[j]);
+						}
+					}
+				}
+			}
+			if (data.contains("</script")) throw new IllegalStateException("Unescaped script end tag in chart data");
+			System.out.println("Compact chart data is equivalent to the source tables");
+		}
+
+		private static void check(Object expected, Object actual, String what) {
+			if (!expected.equals(actual)) throw new IllegalStateException(what + ": " + actual + " != " + expected);
+		}
+	}
+
+	/**
+	 * Minimal JSON reader for the chart data written by {@link WebUtils}: objects, arrays, strings, numbers, null.
+	 */
+	private static class Json {
+		private final String s;
+		private       int    pos;
+
+		Json(String s) {
+			this.s = s;
+		}
+
+		Object value() {
+			skipWhitespace();
+			char c = s.charAt(pos);
+			if (c == '{') {
+				Map<String, Object> m = new LinkedHashMap<>();
+				pos++;
+				while (next() != '}') {
+					String key = (String) value();
+					expect(':');
+					m.put(key, value());
+					if (next() == ',') pos++;
+				}
+				pos++;
+				return m;
+			} else if (c == '[') {
+				List<Object> l = new ArrayList<>();
+				pos++;
+				while (next() != ']') {
+					l.add(value());
+					if (next() == ',') pos++;
+				}
+				pos++;
+				return l;
+			} else if (c == '"') {
+				StringBuilder b = new StringBuilder();
+				for (pos++; s.charAt(pos) != '"'; pos++) {
+					if (s.charAt(pos) == '\\') {
+						pos++;
+						if (s.charAt(pos) == 'u') {
+							b.append((char) Integer.parseInt(s.substring(pos + 1, pos + 5), 16));
+							pos += 4;
+						} else b.append(s.charAt(pos));
+					} else b.append(s.charAt(pos));
+				}
+				pos++;
+				return b.toString();
+			} else if (s.startsWith("null", pos)) {
+				pos += 4;
+				return null;
+			}
+			int start = pos;
+			while (pos < s.length() && "+-0123456789.eE".indexOf(s.charAt(pos)) >= 0) pos++;
+			String number = s.substring(start, pos);
+			return number.matches("-?\\d+") ? (Object) Long.parseLong(number) : (Object) Double.parseDouble(number);
+		}
+
+		private char next() {
+			skipWhitespace();
+			return s.charAt(pos);
+		}
+
+		private void expect(char c) {
+			if (next() != c) throw new IllegalStateException("Expected " + c + " at " + pos);
+			pos++;
+		}
+
+		private void skipWhitespace() {
+			while (Character.isWhitespace(s.charAt(pos))) pos++;
+		}
+	}
+}
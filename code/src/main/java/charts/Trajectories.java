@@ -0,0 +1,293 @@
+package charts;
+
+import org.jetbrains.annotations.Nullable;
+import tech.tablesaw.api.DateColumn;
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.IntColumn;
+import tech.tablesaw.api.Table;
+import tech.tablesaw.columns.Column;
+import tech.tablesaw.columns.dates.PackedLocalDate;
+import tech.tablesaw.plotly.components.Figure;
+import tech.tablesaw.plotly.traces.ScatterTrace;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * "Days since the N-th case" alignment of every region of a long table, for overlays and growth comparisons across all
+ * regions. Works on the (region x day) layout of {@link TableUtils.RegionGroups}: the metric column is read once into
+ * a primitive array, and each region's slice is scanned for the day it reached the threshold, copied onto a day grid
+ * starting there and reduced to its current growth rate and doubling time. Regions are processed in parallel chunks;
+ * nothing is sliced, filtered or summarized per region.
+ * <p>
+ * The aligned series of a region has one value per day since its alignment day, NaN where the region has no row.
+ * Growth is measured over the last {@code window} days of the aligned series, see
+ * {@link SeriesKernels#growthRate(double[], int)}. Regions that never reached the threshold are not aligned.
+ */
+public class Trajectories {
+
+	private final String     metric;
+	private final double     threshold;
+	private final int        window;
+	private final String[]   regions;
+	private final int[]      alignDay;
+	private final double[][] aligned;
+	private final double[]   growth;
+	private final double[]   doubling;
+
+	/**
+	 * @param metric    cumulative metric column, e.g. CONFIRMED
+	 * @param threshold a region is aligned on the first day its metric is at least this value
+	 * @param window    days over which the growth rate and doubling time are measured
+	 */
+	public static Trajectories align(TableUtils.RegionGroups groups, String metric, double threshold, int window) {
+		return new Trajectories(groups, metric, threshold, window);
+	}
+
+	private Trajectories(TableUtils.RegionGroups groups, String metric, double threshold, int window) {
+		if (window < 1) throw new IllegalArgumentException("window must be positive: " + window);
+		this.metric = metric;
+		this.threshold = threshold;
+		this.window = window;
+		int n = groups.size();
+		regions = new String[n];
+		alignDay = new int[n];
+		aligned = new double[n][];
+		growth = new double[n];
+		doubling = new double[n];
+		for (int g = 0; g < n; g++) regions[g] = groups.region(g);
+
+		Table      sorted = groups.sorted();
+		double[]   values = sorted.numberColumn(metric).asDoubleArray();
+		DateColumn dates  = sorted.dateColumn("DT");
+		int[]      days   = new int[values.length];
+		for (int r = 0; r < days.length; r++) {
+			days[r] = dates.isMissing(r) ? Integer.MIN_VALUE : (int) PackedLocalDate.toEpochDay(dates.getIntInternal(r));
+		}
+		int chunk = Math.max(64, n / (Parallel.PARALLELISM * 4) + 1);
+		Parallel.map((n + chunk - 1) / chunk, c -> {
+			for (int g = c * chunk; g < Math.min(n, (c + 1) * chunk); g++) {
+				alignRegion(g, groups.start(g), groups.end(g), days, values);
+			}
+			return null;
+		});
+	}
+
+	private void alignRegion(int g, int start, int end, int[] days, double[] values) {
+		int first = start;
+		while (first < end && !(days[first] != Integer.MIN_VALUE && values[first] >= threshold)) first++;
+		growth[g] = doubling[g] = Double.NaN;
+		if (first == end) {
+			alignDay[g] = Integer.MIN_VALUE;
+			aligned[g] = new double[0];
+			return;
+		}
+		alignDay[g] = days[first];
+		double[] series = new double[days[end - 1] - days[first] + 1];
+		Arrays.fill(series, Double.NaN);
+		for (int r = first; r < end; r++) {
+			series[days[r] - days[first]] = values[r];
+		}
+		aligned[g] = series;
+		int last = series.length - 1;
+		if (last >= window && series[last - window] > 0) {
+			double ratio = series[last] / series[last - window];
+			growth[g] = Math.pow(ratio, 1.0 / window) - 1;
+			if (ratio > 1) doubling[g] = window * Math.log(2) / Math.log(ratio);
+		}
+	}
+
+	public int size() {
+		return regions.length;
+	}
+
+	public String region(int g) {
+		return regions[g];
+	}
+
+	/**
+	 * Day on which region {@code g} reached the threshold, null if it never did.
+	 */
+	@Nullable
+	public LocalDate alignDate(int g) {
+		return alignDay[g] == Integer.MIN_VALUE ? null : LocalDate.ofEpochDay(alignDay[g]);
+	}
+
+	/**
+	 * Values of region {@code g} on days 0, 1, ... since its alignment day; empty if it was not aligned.
+	 */
+	public double[] aligned(int g) {
+		return aligned[g];
+	}
+
+	/**
+	 * Average daily growth rate over the last {@code window} days, NaN if the region has not been aligned for that long
+	 * or has no value at the start of the window.
+	 */
+	public double growthRate(int g) {
+		return growth[g];
+	}
+
+	/**
+	 * Days to double at the growth of the last {@code window} days; NaN if it did not grow.
+	 */
+	public double doublingTime(int g) {
+		return doubling[g];
+	}
+
+	/**
+	 * The {@code n} fastest growing regions, fastest first (ties by name); regions without a growth rate are left out.
+	 */
+	public int[] rankByGrowth(int n) {
+		return rank(n, Comparator.comparingDouble((Integer g) -> -growth[g]).thenComparing(g -> regions[g]), growth);
+	}
+
+	/**
+	 * The {@code n} regions that reached the threshold first (ties by name); regions that never reached it are left
+	 * out.
+	 */
+	public int[] rankByAlignDate(int n) {
+		double[] day = new double[regions.length];
+		for (int g = 0; g < day.length; g++) day[g] = alignDay[g] == Integer.MIN_VALUE ? Double.NaN : alignDay[g];
+		return rank(n, Comparator.comparingDouble((Integer g) -> day[g]).thenComparing(g -> regions[g]), day);
+	}
+
+	private int[] rank(int n, Comparator<Integer> order, double[] key) {
+		List<Integer> ranked = new ArrayList<>();
+		for (int g = 0; g < regions.length; g++) {
+			if (!Double.isNaN(key[g])) ranked.add(g);
+		}
+		ranked.sort(order);
+		return ranked.subList(0, Math.min(n, ranked.size())).stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * Name of the x column of {@link #table(int...)}, e.g. "DAYS SINCE 100 CONFIRMED".
+	 */
+	public String daysColumn() {
+		return "DAYS SINCE " + (threshold == Math.rint(threshold) ? String.format("%,d", (long) threshold) : String.valueOf(threshold)) + " " + metric;
+	}
+
+	/**
+	 * The aligned series of {@code regions} side by side: the days column, then one column per region named after it,
+	 * as long as the longest of them.
+	 */
+	public Table table(int... regions) {
+		int length = 0;
+		for (int g : regions) length = Math.max(length, aligned[g].length);
+		int[] days = new int[length];
+		for (int d = 0; d < length; d++) days[d] = d;
+		List<Column<?>> columns = new ArrayList<>();
+		columns.add(IntColumn.create(daysColumn(), days));
+		for (int g : regions) {
+			double[] v = Arrays.copyOf(aligned[g], length);
+			Arrays.fill(v, aligned[g].length, length, Double.NaN);
+			columns.add(DoubleColumn.create(this.regions[g], v));
+		}
+		return Table.create(metric + " trajectories", columns.toArray(new Column<?>[0]));
+	}
+
+	/**
+	 * Overlay of the aligned series of {@code regions}, e.g. of {@link #rankByGrowth(int)}.
+	 */
+	public Figure figure(String title, int... regions) {
+		String[] names = new String[regions.length];
+		for (int i = 0; i < regions.length; i++) names[i] = this.regions[regions[i]];
+		return TableUtils.timeSeriesPlot(table(regions), daysColumn(), names, new ScatterTrace.Mode[]{ScatterTrace.Mode.LINE}, title, metric);
+	}
+
+	/**
+	 * Writes the comparison page of the {@link Datasets#JHU_GLOBAL} regions: the 20 fastest growing and the 20 earliest
+	 * regions, aligned on their 100th confirmed case. Usage: {@code Trajectories <output file>}.
+	 */
+	public static void main(String[] args) throws IOException {
+		Table         t            = ChartEngine.ingest(Datasets.JHU_GLOBAL, null);
+		Trajectories  trajectories = align(TableUtils.groupByRegion(t), "CONFIRMED", 100, 7);
+		StringBuilder body         = new StringBuilder("<table><tr><th>REGION</th><th>DAILY GROWTH</th><th>DOUBLING TIME (DAYS)</th></tr>");
+		int[]         fastest      = trajectories.rankByGrowth(20);
+		for (int g : fastest) {
+			body.append(String.format("<tr><td>%s</td><td>%.1f%%</td><td>%.1f</td></tr>", trajectories.region(g), 100 * trajectories.growthRate(g), trajectories.doublingTime(g)));
+		}
+		body.append("</table>");
+		WebUtils.write(Paths.get(args[0]), WebUtils.toHtml(body.toString(),
+				trajectories.figure("Fastest growing over the last 7 days", fastest),
+				trajectories.figure("First to reach 100 cases", trajectories.rankByAlignDate(20))));
+	}
+
+	/**
+	 * Aligns synthetic regions, checks offsets, aligned values and growth of a sample against a naive per-region
+	 * computation with {@code Table.where}, and times the alignment. Usage: {@code TestAlignment [<regions> <days>]},
+	 * 5000 x 600 by default.
+	 */
+	private static class TestAlignment {
+		public static void main(String[] args) {
+			int    numRegions = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+			int    numDays    = args.length > 1 ? Integer.parseInt(args[1]) : 600;
+			Random random     = new Random(3);
+			int    rows       = 0;
+			int[]  regionOf   = new int[numRegions * numDays];
+			int[]  dayOf      = new int[regionOf.length];
+			double[] value    = new double[regionOf.length];
+			for (int r = 0; r < numRegions; r++) {
+				double v = 0, rate = random.nextDouble() * 0.3;
+				for (int d = random.nextInt(numDays / 2); d < numDays; d++) {
+					v = v == 0 ? 1 : Math.ceil(v * (1 + rate * random.nextDouble()));
+					if (random.nextInt(20) == 0) continue; // gap
+					regionOf[rows] = r;
+					dayOf[rows] = d;
+					value[rows++] = v;
+				}
+			}
+			String[]  names = new String[rows];
+			DateColumn dt   = DateColumn.create("DT", rows);
+			for (int i = 0; i < rows; i++) {
+				names[i] = "R" + regionOf[i];
+				dt.set(i, PackedLocalDate.pack(LocalDate.of(2020, 1, 22).plusDays(dayOf[i])));
+			}
+			Table t = Table.create("test", tech.tablesaw.api.StringColumn.create("REGION", names), dt, DoubleColumn.create("CONFIRMED", Arrays.copyOf(value, rows)));
+			TableUtils.RegionGroups groups = TableUtils.groupByRegion(t);
+
+			Trajectories trajectories = null;
+			for (int round = 0; round < 10; round++) {
+				long start = System.nanoTime();
+				trajectories = align(groups, "CONFIRMED", 100, 7);
+				int[] top = trajectories.rankByGrowth(20);
+				System.out.printf("%,d regions, %,d rows: aligned and ranked in %.1f ms (fastest: %s)%n",
+						groups.size(), rows, (System.nanoTime() - start) / 1e6, trajectories.region(top[0]));
+			}
+
+			for (int g = 0; g < groups.size(); g += Math.max(1, groups.size() / 50)) {
+				Table     region = t.where(t.stringColumn("REGION").isEqualTo(groups.region(g))).sortAscendingOn("DT");
+				Table     above  = region.where(region.numberColumn("CONFIRMED").isGreaterThanOrEqualTo(100));
+				LocalDate first  = above.rowCount() == 0 ? null : above.dateColumn("DT").min();
+				if (first == null ? trajectories.alignDate(g) != null : !first.equals(trajectories.alignDate(g)))
+					throw new IllegalStateException(groups.region(g) + ": aligned on " + trajectories.alignDate(g) + " instead of " + first);
+				if (first == null) continue;
+				double[] series = trajectories.aligned(g);
+				for (int r = 0; r < region.rowCount(); r++) {
+					long k = region.dateColumn("DT").get(r).toEpochDay() - first.toEpochDay();
+					if (k >= 0 && series[(int) k] != region.numberColumn("CONFIRMED").getDouble(r))
+						throw new IllegalStateException(groups.region(g) + ": day " + k + " differs");
+				}
+				double[] rate     = SeriesKernels.growthRate(series, 7);
+				double[] doubling = SeriesKernels.doublingTime(series, 7);
+				double   expected = rate[rate.length - 1];
+				if (Double.compare(expected, trajectories.growthRate(g)) != 0 || Double.compare(doubling[doubling.length - 1], trajectories.doublingTime(g)) != 0)
+					throw new IllegalStateException(groups.region(g) + ": growth " + trajectories.growthRate(g) + " instead of " + expected);
+			}
+			int[] top = trajectories.rankByGrowth(10);
+			for (int i = 1; i < top.length; i++) {
+				if (trajectories.growthRate(top[i]) > trajectories.growthRate(top[i - 1])) throw new IllegalStateException("Ranking not descending at " + i);
+			}
+			Table overlay = trajectories.table(top);
+			if (overlay.columnCount() != top.length + 1) throw new IllegalStateException("Overlay has " + overlay.columnCount() + " columns");
+			System.out.println("Alignment matches the per-region computation");
+		}
+	}
+}
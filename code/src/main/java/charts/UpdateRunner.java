@@ -1,40 +1,237 @@
 package charts;
 
+import org.jetbrains.annotations.Nullable;
+
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Updates the website every N minutes, either by starting a command (e.g. update_website.cmd, which starts one JVM per
+ * page), or with {@code --in-process} by generating the pages of all {@link Datasets#PUBLISHED} datasets in this JVM, so
+ * that class loading, JIT warm-up, the source cache and the series store are shared by all runs.
+ * <p>
+ * Usage: {@code UpdateRunner <command> <minutes>} or
+ * {@code UpdateRunner --in-process <minutes> <output dir> <store dir> [<prepare command> [<publish command>]]}
+ * where the prepare command runs before the pages are generated (e.g. git pull) and the publish command after them.
+ * <p>
+ * Runs never overlap: a tick is skipped while the previous run is still going. A job that fails is retried after a
+ * backoff that doubles with every consecutive failure, up to {@link #MAX_BACKOFF_TICKS} ticks; other jobs keep running.
+ */
 public class UpdateRunner {
 	private static final ScheduledExecutorService EXEC = new ScheduledThreadPoolExecutor(1);
 
-	public static void main(String[] args) {
-		EXEC.scheduleAtFixedRate(() -> {
+	static final int MAX_BACKOFF_TICKS = 32;
+
+	interface Task {
+		void run() throws Exception;
+	}
+
+	static class Job {
+		final String name;
+		final Task   task;
+		int          failures;
+		int          skipTicks;
+
+		Job(String name, Task task) {
+			this.name = name;
+			this.task = task;
+		}
+	}
+
+	private final List<Job>       jobs;
+	private final ExecutorService worker  = Executors.newSingleThreadExecutor(r -> new Thread(r, "update-run"));
+	private final AtomicBoolean   running = new AtomicBoolean();
+
+	UpdateRunner(List<Job> jobs) {
+		this.jobs = jobs;
+	}
+
+	void schedule(long period, TimeUnit unit) {
+		EXEC.scheduleAtFixedRate(this::tick, 0, period, unit);
+	}
+
+	/**
+	 * Starts a run on the worker thread, unless the previous one is still going.
+	 */
+	void tick() {
+		if (!running.compareAndSet(false, true)) {
+			log("previous run still going, skipping tick");
+			return;
+		}
+		worker.execute(() -> {
 			try {
-				Process p = Runtime.getRuntime().exec(args[0]);
+				runOnce();
+			} finally {
+				running.set(false);
+			}
+		});
+	}
 
-				BufferedReader stdInput = new BufferedReader(new InputStreamReader(p.getInputStream()));
+	void runOnce() {
+		for (Job job : jobs) {
+			if (job.skipTicks > 0) {
+				job.skipTicks--;
+				log(job.name + ": backing off after " + job.failures + " failure(s), " + job.skipTicks + " more tick(s) to skip");
+				continue;
+			}
+			long start = System.nanoTime();
+			try {
+				job.task.run();
+				job.failures = 0;
+				log(job.name + ": done in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+			} catch (Exception e) {
+				job.failures++;
+				job.skipTicks = (int) Math.min(MAX_BACKOFF_TICKS, 1L << Math.min(job.failures - 1, 30)) - 1;
+				log(job.name + ": failed (" + job.failures + " in a row), skipping the next " + job.skipTicks + " tick(s)");
+				e.printStackTrace();
+			}
+		}
+	}
 
-				BufferedReader stdError = new BufferedReader(new InputStreamReader(p.getErrorStream()));
+	private static void log(String message) {
+		System.out.println(LocalDateTime.now().withNano(0) + " " + message);
+	}
 
-				// read the output from the command
-				System.out.println("Here is the standard output of the command:\n");
-				String s;
-				while ((s = stdInput.readLine()) != null) {
-					System.out.println(s);
-				}
+	/**
+	 * Runs {@code command} and copies its standard output and error to ours while it runs. Both streams are drained
+	 * concurrently, so the child never blocks on a full pipe.
+	 *
+	 * @throws IOException if the command cannot be started or exits with a non-zero code
+	 */
+	static void exec(String command) throws IOException, InterruptedException {
+		Process p    = Runtime.getRuntime().exec(command);
+		Thread  out  = pump(p.getInputStream(), System.out);
+		Thread  err  = pump(p.getErrorStream(), System.err);
+		int     exit = p.waitFor();
+		out.join();
+		err.join();
+		if (exit != 0) throw new IOException(command + " exited with code " + exit);
+	}
 
-				// read any errors from the attempted command
-				System.out.println("Here is the standard error of the command (if any):\n");
-				while ((s = stdError.readLine()) != null) {
-					System.out.println(s);
+	private static Thread pump(InputStream in, PrintStream to) {
+		Thread t = new Thread(() -> {
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(in))) {
+				String s;
+				while ((s = reader.readLine()) != null) {
+					to.println(s);
 				}
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
-		}, 0, Integer.parseInt(args[1]), TimeUnit.MINUTES);
+		}, "process-output");
+		t.setDaemon(true);
+		t.start();
+		return t;
+	}
+
+	/**
+	 * A "prefetch" job followed by one job per dataset running {@code page}. The prefetch job only starts the downloads
+	 * of the datasets whose job runs in the same tick, not of those backing off.
+	 */
+	static List<Job> pageJobs(List<Dataset> datasets, PageTask page) {
+		List<Job> pages = new ArrayList<>();
+		for (Dataset d : datasets) {
+			pages.add(new Job(d.name(), () -> page.run(d)));
+		}
+		List<Job> jobs = new ArrayList<>();
+		jobs.add(new Job("prefetch", () -> {
+			List<Dataset> due = new ArrayList<>();
+			for (int i = 0; i < datasets.size(); i++) {
+				if (pages.get(i).skipTicks == 0) due.add(datasets.get(i));
+			}
+			ChartEngine.prefetch(due);
+		}));
+		jobs.addAll(pages);
+		return jobs;
+	}
+
+	interface PageTask {
+		void run(Dataset d) throws Exception;
 	}
 
+	@Nullable
+	private static Job command(String name, @Nullable String command) {
+		return command == null ? null : new Job(name, () -> exec(command));
+	}
+
+	public static void main(String[] args) {
+		List<Job> jobs;
+		int       minutes;
+		if (args[0].equals("--in-process")) {
+			minutes = Integer.parseInt(args[1]);
+			Path        dir   = Paths.get(args[2]);
+			SeriesStore store = new SeriesStore(Paths.get(args[3]));
+			jobs = new ArrayList<>();
+			jobs.add(command("prepare", args.length > 4 ? args[4] : null));
+			jobs.addAll(pageJobs(Datasets.PUBLISHED, d -> ChartEngine.update(d, dir.resolve(d.fileName()), store)));
+			jobs.add(command("publish", args.length > 5 ? args[5] : null));
+			jobs.removeAll(Collections.singleton(null));
+		} else {
+			minutes = Integer.parseInt(args[1]);
+			jobs = Collections.singletonList(command(args[0], args[0]));
+		}
+		new UpdateRunner(jobs).schedule(minutes, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * Checks the backoff with direct {@link #runOnce()} calls: a job failing its first runs backs off 0, 1, 3, ...
+	 * runs and its failures are reset on success, while a healthy job runs every time. Then schedules a slow job on a
+	 * 100 ms tick and checks that runs never overlap and ticks are skipped while a run is going.
+	 */
+	private static class TestScheduling {
+		public static void main(String[] args) throws Exception {
+			int[]         runs     = new int[1];
+			List<Integer> attempts = new ArrayList<>();
+			Job healthy = new Job("healthy", () -> runs[0]++);
+			Job failing = new Job("failing", () -> {
+				attempts.add(runs[0]);
+				if (attempts.size() <= 3) throw new IOException("failure " + attempts.size());
+			});
+			UpdateRunner backoff = new UpdateRunner(Arrays.asList(healthy, failing));
+			for (int run = 0; run < 12; run++) {
+				backoff.runOnce();
+			}
+			backoff.worker.shutdown();
+			if (runs[0] != 12) throw new IllegalStateException("Healthy job ran " + runs[0] + " times in 12 runs");
+			// failing job: runs on run 1, backs off 0 runs, fails on run 2, skips 1, fails on run 4, skips 3, succeeds on run 8
+			if (!attempts.equals(Arrays.asList(1, 2, 4, 8, 9, 10, 11, 12)))
+				throw new IllegalStateException("Unexpected backoff: attempts on runs " + attempts);
+			if (failing.failures != 0) throw new IllegalStateException("Failures not reset after success");
+
+			AtomicBoolean inside = new AtomicBoolean();
+			int[]         ticks  = new int[1];
+			Job slow = new Job("slow", () -> {
+				if (!inside.compareAndSet(false, true)) throw new IllegalStateException("Overlapping runs");
+				ticks[0]++;
+				Thread.sleep(ticks[0] == 2 ? 250 : 10);
+				inside.set(false);
+			});
+			UpdateRunner runner = new UpdateRunner(Collections.singletonList(slow));
+			for (int tick = 0; tick < 14; tick++) {
+				runner.tick();
+				Thread.sleep(100);
+			}
+			runner.worker.shutdown();
+			runner.worker.awaitTermination(1, TimeUnit.SECONDS);
+			if (slow.failures > 0) throw new IllegalStateException("Slow job failed");
+			if (ticks[0] >= 14) throw new IllegalStateException("No tick was skipped: " + ticks[0] + " runs");
+			System.out.println("Scheduling: failing job attempted on runs " + attempts + ", " + ticks[0] + " runs for 14 ticks");
+		}
+	}
 }
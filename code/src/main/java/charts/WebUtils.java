@@ -3,9 +3,85 @@ package charts;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import tech.tablesaw.plotly.components.Figure;
+import tech.tablesaw.plotly.traces.ScatterTrace;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
 
 public class WebUtils {
 
+	/**
+	 * If true, pages are written with {@link #toCompactHtml(String, TimeSeriesChart...)} instead of one Tablesaw
+	 * figure script per chart.
+	 */
+	public static final boolean COMPACT = Boolean.getBoolean("charts.compact");
+
+	/**
+	 * If true, {@link #write(Path, String)} also writes a gzip compressed sibling file (path + ".gz").
+	 */
+	public static final boolean GZIP = Boolean.getBoolean("charts.gzip");
+
+	/**
+	 * If true, {@link HtmlPage#write(Path)} uses {@link #writeMultiPage(Path, String, TimeSeriesChart...)}.
+	 */
+	public static final boolean MULTI_PAGE = Boolean.getBoolean("charts.multipage");
+
+	/**
+	 * Builds the traces of the compact format client side: dates come from the shared axis, delta encoded series are
+	 * summed back up, a downsampled series picks its dates by its (delta encoded) positions on the chart's dates, then
+	 * every chart gets the same layout as {@link TableUtils#timeSeriesPlot}.
+	 */
+	private static final String COMPACT_RENDERER =
+			"function day(axisStart, i) { return new Date(axisStart + i * 864e5).toISOString().substring(0, 10); }\n" +
+			"function undelta(v) { for (var i = 1; i < v.length; i++) v[i] += v[i - 1]; return v; }\n" +
+			"function plotChart(id, axisStart, c) {\n" +
+			"  var idx = c.x.i ? undelta(c.x.i) : null, n = idx ? idx.length : c.x.n, x = new Array(n);\n" +
+			"  for (var i = 0; i < n; i++) x[i] = day(axisStart, idx ? idx[i] : c.x.s + i);\n" +
+			"  var traces = c.s.map(function (s) {\n" +
+			"    var sx = s.k ? undelta(s.k).map(function (i) { return x[i]; }) : x;\n" +
+			"    return {type: 'scatter', x: sx, y: s.d ? undelta(s.v) : s.v, name: s.n, mode: s.m, showlegend: true, yaxis: s.y2 ? 'y2' : 'y'};\n" +
+			"  });\n" +
+			"  var layout = {title: c.t, width: size[0], height: size[1], xaxis: {title: c.xt}, yaxis: {title: c.a[0]}};\n" +
+			"  if (c.a.length > 1) layout.yaxis2 = {title: c.a[1], side: 'right', overlaying: 'y'};\n" +
+			"  Plotly.newPlot(id, traces, layout);\n" +
+			"}\n";
+
+	/**
+	 * Loads the data file of a lazy chart placeholder when it comes close to the viewport.
+	 */
+	private static final String LAZY_LOADER =
+			"function load(el) {\n" +
+			"  if (el.getAttribute('data-loaded')) return;\n" +
+			"  el.setAttribute('data-loaded', '1');\n" +
+			"  fetch(el.getAttribute('data-src')).then(function (r) { return r.json(); })\n" +
+			"    .then(function (d) { el.style.minHeight = ''; plotChart(el.id, Date.parse(d.start), d.chart); });\n" +
+			"}\n" +
+			"var lazy = Array.prototype.slice.call(document.querySelectorAll('div[data-src]'));\n" +
+			"if ('IntersectionObserver' in window) {\n" +
+			"  var observer = new IntersectionObserver(function (entries) {\n" +
+			"    entries.forEach(function (e) { if (e.isIntersecting) { observer.unobserve(e.target); load(e.target); } });\n" +
+			"  }, {rootMargin: '800px'});\n" +
+			"  lazy.forEach(function (el) { observer.observe(el); });\n" +
+			"} else lazy.forEach(load);\n" +
+			"window.addEventListener('hashchange', function () {\n" +
+			"  var el = document.getElementById(location.hash.substring(1).replace('region', 'div'));\n" +
+			"  if (el) load(el);\n" +
+			"});\n";
+
 
 	private static String getDefaultHtmlTableHeaderString() {
 		return "<html>\n" +
@@ -32,25 +108,371 @@ public class WebUtils {
 	}
 
 	public static String toHtml(@Nullable String bodyBeforeFigures, @NotNull Figure... fig) {
-		String[] divName = new String[fig.length];
+		StringWriter out = new StringWriter();
+		try {
+			writeHtml(out, bodyBeforeFigures, fig);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Streams the page of {@link #toHtml(String, Figure...)} to {@code out}, one figure script at a time.
+	 */
+	public static void writeHtml(Writer out, @Nullable String bodyBeforeFigures, @NotNull Figure... fig) throws IOException {
+		writeHeader(out, bodyBeforeFigures, fig.length);
 		for (int i = 0; i < fig.length; i++) {
-			divName[i] = "div" + i;
+			out.write(fig[i].asJavascript("div" + i));
 		}
-		StringBuilder builder = new StringBuilder(fig.length * 4 + 10);
-		builder.append(getDefaultHtmlTableHeaderString());
+		writeFooter(out);
+	}
+
+	private static void writeHeader(Writer out, @Nullable String bodyBeforeFigures, int numFigures) throws IOException {
+		out.write(getDefaultHtmlTableHeaderString());
 		if (bodyBeforeFigures != null) {
-			builder.append(bodyBeforeFigures);
+			out.write(bodyBeforeFigures);
 		}
-		for (String d : divName) {
-			builder.append("    <div id='").append(d).append("' ></div>\n");
+		for (int i = 0; i < numFigures; i++) {
+			out.write("    <div id='div" + i + "' ></div>\n");
 		}
-		for (int i = 0; i < fig.length; i++) {
-			builder.append(fig[i].asJavascript(divName[i]));
+	}
+
+	private static void writeFooter(Writer out) throws IOException {
+		out.write("</body>\n" +
+		          "</html>");
+	}
+
+	/**
+	 * Renders the charts as Tablesaw figures, or in the compact format if {@link #COMPACT} is set.
+	 */
+	public static String toHtml(@Nullable String bodyBeforeFigures, @NotNull TimeSeriesChart... charts) {
+		StringWriter out = new StringWriter();
+		try {
+			writeHtml(out, bodyBeforeFigures, charts);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
-		builder.append("</body>\n" +
-		               "</html>");
-		return builder.toString();
+		return out.toString();
 	}
 
+	/**
+	 * Streams the page of {@link #toHtml(String, TimeSeriesChart...)} to {@code out}; each figure is built and
+	 * serialized only when it is written.
+	 */
+	public static void writeHtml(Writer out, @Nullable String bodyBeforeFigures, @NotNull TimeSeriesChart... charts) throws IOException {
+		if (COMPACT) {
+			writeCompactHtml(out, bodyBeforeFigures, charts);
+			return;
+		}
+		writeHeader(out, bodyBeforeFigures, charts.length);
+		for (int[] batch : Parallel.batches(charts.length)) {
+			for (String script : Parallel.map(batch[1] - batch[0], i -> charts[batch[0] + i].toFigure().asJavascript("div" + (batch[0] + i)))) {
+				out.write(script);
+			}
+		}
+		writeFooter(out);
+	}
+
+	public static String toCompactHtml(@Nullable String bodyBeforeFigures, @NotNull TimeSeriesChart... charts) {
+		StringWriter out = new StringWriter();
+		try {
+			writeCompactHtml(out, bodyBeforeFigures, charts);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Same page as {@link #toHtml(String, Figure...)}, but the chart data is written once as compact JSON and the
+	 * Plotly traces are built in the browser: all charts share one date axis (each chart stores a start offset and a
+	 * length, or delta encoded day indices if its dates have gaps), and whole-number series are delta encoded.
+	 */
+	public static void writeCompactHtml(Writer out, @Nullable String bodyBeforeFigures, @NotNull TimeSeriesChart... charts) throws IOException {
+		int firstDay = Integer.MAX_VALUE;
+		for (TimeSeriesChart chart : charts) {
+			for (int d : chart.epochDays()) firstDay = Math.min(firstDay, d);
+		}
+		if (firstDay == Integer.MAX_VALUE) firstDay = 0;
+		LocalDate axisStart = LocalDate.ofEpochDay(firstDay);
+
+		writeHeader(out, bodyBeforeFigures, charts.length);
+		out.write("<script>\n(function () {\n" +
+		          "var size = [" + TableUtils.CHART_DIMENSIONS[0] + ", " + TableUtils.CHART_DIMENSIONS[1] + "];\n" +
+		          "var axisStart = Date.UTC(" + axisStart.getYear() + ", " + (axisStart.getMonthValue() - 1) + ", " + axisStart.getDayOfMonth() + ");\n" +
+		          "var charts = [\n");
+		final int axisFirstDay = firstDay;
+		for (int[] batch : Parallel.batches(charts.length)) {
+			for (StringBuilder chartJson : Parallel.map(batch[1] - batch[0], i -> {
+				int           k    = batch[0] + i;
+				StringBuilder json = new StringBuilder();
+				if (k > 0) json.append(",\n");
+				appendChartJson(json, charts[k], charts[k].epochDays(), axisFirstDay);
+				return json;
+			})) {
+				out.append(chartJson);
+			}
+		}
+		out.write("];\n" +
+		          COMPACT_RENDERER +
+		          "charts.forEach(function (c, k) { plotChart('div' + k, axisStart, c); });\n" +
+		          "})();\n</script>\n");
+		writeFooter(out);
+	}
 
+	/**
+	 * Writes a lightweight index page at {@code indexPath} and one JSON data file per chart into a sibling
+	 * {@code <name>_data} directory. The first chart (the summary) is embedded in the index, the other charts are
+	 * listed with links and placeholders and fetched by the browser only when scrolled or jumped to. Data files are
+	 * written in parallel, and a chart whose data hash is the same as in the previous run is not written again.
+	 */
+	public static void writeMultiPage(Path indexPath, @Nullable String bodyBeforeFigures, @NotNull TimeSeriesChart... charts) throws IOException {
+		String fileName = indexPath.getFileName().toString();
+		String dataDirName = (fileName.contains(".") ? fileName.substring(0, fileName.lastIndexOf('.')) : fileName) + "_data";
+		Path   dataDir     = indexPath.toAbsolutePath().resolveSibling(dataDirName);
+		Files.createDirectories(dataDir);
+
+		Path       manifestPath = dataDir.resolve("hashes.properties");
+		Properties previous     = new Properties();
+		if (Files.exists(manifestPath)) {
+			try (InputStream in = Files.newInputStream(manifestPath)) {
+				previous.load(in);
+			}
+		}
+		String[] files  = new String[charts.length];
+		String[] hashes = new String[charts.length];
+		try {
+			Parallel.map(charts.length - 1, i -> {
+				int k = i + 1;
+				files[k] = charts[k].fileName();
+				hashes[k] = charts[k].dataHash();
+				Path file = dataDir.resolve(files[k]);
+				if (hashes[k].equals(previous.getProperty(files[k])) && Files.exists(file)) return null;
+				String json = chartData(charts[k]);
+				try {
+					write(file, out -> out.write(json));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				return null;
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		Properties manifest = new Properties();
+		Set<String> current = new HashSet<>();
+		for (int k = 1; k < charts.length; k++) {
+			manifest.setProperty(files[k], hashes[k]);
+			current.add(files[k]);
+		}
+		try (DirectoryStream<Path> stale = Files.newDirectoryStream(dataDir, "*.json")) {
+			for (Path p : stale) {
+				if (!current.contains(p.getFileName().toString())) Files.delete(p);
+			}
+		}
+		write(manifestPath, out -> manifest.store(out, null));
+
+		write(indexPath, out -> writeMultiPageIndex(out, bodyBeforeFigures, dataDirName, charts));
+	}
+
+	/**
+	 * Index page of {@link #writeMultiPage(Path, String, TimeSeriesChart...)}: the data file of chart k is fetched from
+	 * {@code dataDirName + "/" + charts[k].fileName()}, relative to the index.
+	 */
+	public static void writeMultiPageIndex(Writer out, @Nullable String bodyBeforeFigures, String dataDirName, @NotNull TimeSeriesChart... charts) throws IOException {
+		writeHeader(out, bodyBeforeFigures, charts.length > 0 ? 1 : 0);
+		out.write("<ul>\n");
+		for (int k = 1; k < charts.length; k++) {
+			out.write("<li><a href='#region" + k + "'>" + escapeHtml(charts[k].title()) + "</a></li>\n");
+		}
+		out.write("</ul>\n");
+		for (int k = 1; k < charts.length; k++) {
+			out.write("    <div id='region" + k + "'><div id='div" + k + "' data-src='" + dataDirName + "/" + charts[k].fileName() +
+			          "' style='min-height:" + TableUtils.CHART_DIMENSIONS[1] + "px'></div></div>\n");
+		}
+		out.write("<script>\n(function () {\n" +
+		          "var size = [" + TableUtils.CHART_DIMENSIONS[0] + ", " + TableUtils.CHART_DIMENSIONS[1] + "];\n" +
+		          COMPACT_RENDERER);
+		if (charts.length > 0) {
+			int[]         days = charts[0].epochDays();
+			int           firstDay = days.length > 0 ? days[0] : 0;
+			StringBuilder json = new StringBuilder();
+			appendChartJson(json, charts[0], days, firstDay);
+			out.write("plotChart('div0', Date.parse('" + LocalDate.ofEpochDay(firstDay) + "'), ");
+			out.append(json);
+			out.write(");\n");
+		}
+		out.write(LAZY_LOADER +
+		          "})();\n</script>\n");
+		writeFooter(out);
+	}
+
+	/**
+	 * Content of the data file of a chart in multi-page output: its first date and the compact chart JSON.
+	 */
+	public static String chartData(TimeSeriesChart chart) {
+		int[]         days = chart.epochDays();
+		StringBuilder json = new StringBuilder("{\"start\":\"").append(LocalDate.ofEpochDay(days.length > 0 ? days[0] : 0)).append("\",\"chart\":");
+		appendChartJson(json, chart, days, days.length > 0 ? days[0] : 0);
+		return json.append('}').toString();
+	}
+
+	private static String escapeHtml(String s) {
+		return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("'", "&#39;").replace("\"", "&quot;");
+	}
+
+	private static void appendChartJson(StringBuilder b, TimeSeriesChart c, int[] days, int firstDay) {
+		b.append("{\"t\":");
+		appendJsonString(b, c.title());
+		b.append(",\"xt\":");
+		appendJsonString(b, c.xColName);
+		b.append(",\"a\":[");
+		appendJsonString(b, c.yTitle(0));
+		if (c.yColNames.length >= 2) {
+			b.append(',');
+			appendJsonString(b, c.yTitle(1));
+		}
+		b.append("],\"x\":");
+		boolean contiguous = true;
+		for (int i = 1; i < days.length && contiguous; i++) {
+			contiguous = days[i] == days[i - 1] + 1;
+		}
+		if (contiguous) {
+			b.append("{\"s\":").append(days.length > 0 ? days[0] - firstDay : 0).append(",\"n\":").append(days.length).append('}');
+		} else {
+			b.append("{\"i\":[");
+			for (int i = 0; i < days.length; i++) {
+				if (i > 0) b.append(',');
+				b.append(i == 0 ? days[0] - firstDay : days[i] - days[i - 1]);
+			}
+			b.append("]}");
+		}
+		b.append(",\"s\":[");
+		boolean first = true;
+		for (int y = 0; y < c.yColNames.length; y++) {
+			for (int i = 0; i < c.yColNames[y].length; i++) {
+				if (!first) b.append(',');
+				first = false;
+				b.append("{\"n\":");
+				appendJsonString(b, c.yColNames[y][i]);
+				b.append(",\"m\":\"").append(plotlyMode(c.mode(y, i))).append('"');
+				if (y == 1) b.append(",\"y2\":1");
+				double[] values = c.values(y, i);
+				int[]    kept   = c.keptRows(y, i);
+				if (kept != null) {
+					b.append(",\"k\":[");
+					double[] subset = new double[kept.length];
+					for (int j = 0; j < kept.length; j++) {
+						if (j > 0) b.append(',');
+						b.append(j == 0 ? kept[0] : kept[j] - kept[j - 1]);
+						subset[j] = values[kept[j]];
+					}
+					b.append(']');
+					values = subset;
+				}
+				appendValuesJson(b, values);
+				b.append('}');
+			}
+		}
+		b.append("]}");
+	}
+
+	private static void appendValuesJson(StringBuilder b, double[] v) {
+		boolean whole = true;
+		for (int i = 0; i < v.length && whole; i++) {
+			whole = v[i] == Math.rint(v[i]) && Math.abs(v[i]) < (1L << 52);
+		}
+		if (whole) b.append(",\"d\":1");
+		b.append(",\"v\":[");
+		for (int i = 0; i < v.length; i++) {
+			if (i > 0) b.append(',');
+			if (whole) b.append((long) v[i] - (i == 0 ? 0 : (long) v[i - 1]));
+			else if (Double.isNaN(v[i]) || Double.isInfinite(v[i])) b.append("null");
+			else if (v[i] == Math.rint(v[i]) && Math.abs(v[i]) < (1L << 52)) b.append((long) v[i]);
+			else b.append(v[i]);
+		}
+		b.append(']');
+	}
+
+	private static String plotlyMode(ScatterTrace.Mode mode) {
+		switch (mode) {
+			case MARKERS:
+				return "markers";
+			case LINE_AND_MARKERS:
+				return "lines+markers";
+			default:
+				return "lines";
+		}
+	}
+
+	static void appendJsonString(StringBuilder b, String s) {
+		b.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') b.append('\\').append(c);
+			else if (c == '/' && i > 0 && s.charAt(i - 1) == '<') b.append("\\/");
+			else if (c < 0x20) b.append(String.format("\\u%04x", (int) c));
+			else b.append(c);
+		}
+		b.append('"');
+	}
+
+	/**
+	 * Writes a page, and a gzip compressed copy next to it if {@link #GZIP} is set.
+	 */
+	public static void write(Path path, String html) throws IOException {
+		write(path, out -> out.write(html));
+	}
+
+	/**
+	 * Streams the page of {@link #toHtml(String, TimeSeriesChart...)} to {@code path}, see {@link #write(Path, String)}.
+	 */
+	public static void write(Path path, @Nullable String bodyBeforeFigures, @NotNull TimeSeriesChart... charts) throws IOException {
+		write(path, out -> writeHtml(out, bodyBeforeFigures, charts));
+	}
+
+	private interface PageWriter {
+		void writeTo(Writer out) throws IOException;
+	}
+
+	/**
+	 * The page is written as UTF-8 (the encoding {@code fetch(...).json()} decodes the data files with) to a temporary
+	 * file in the target directory which then replaces the target atomically, so a reader never sees a partially
+	 * written page. The gzip copy is also compressed to a temporary file first; both are moved into place only once
+	 * both are complete, the plain page first, so the pre-compressed copy is never newer than the page it stands for.
+	 * Streaming the page into the temporary file is reported as the "serialize" stage, compressing and moving it into
+	 * place as "write".
+	 */
+	private static void write(Path path, PageWriter page) throws IOException {
+		Path dir   = path.toAbsolutePath().getParent();
+		Path tmp   = Files.createTempFile(dir, path.getFileName().toString(), ".tmp");
+		Path gzTmp = null;
+		try {
+			try (RunReport.Stage stage = RunReport.stage("serialize", path.getFileName().toString())) {
+				try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+					page.writeTo(out);
+				}
+				stage.bytesOut(Files.size(tmp));
+			}
+			try (RunReport.Stage stage = RunReport.stage("write", path.getFileName().toString())) {
+				long plain = Files.size(tmp);
+				long size  = plain;
+				if (GZIP) {
+					gzTmp = Files.createTempFile(dir, path.getFileName().toString(), ".gz.tmp");
+					try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzTmp))) {
+						Files.copy(tmp, out);
+					}
+					size += Files.size(gzTmp);
+				}
+				Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				if (gzTmp != null) Files.move(gzTmp, path.resolveSibling(path.getFileName() + ".gz"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				stage.bytesIn(plain).bytesOut(size);
+			}
+		} finally {
+			Files.deleteIfExists(tmp);
+			if (gzTmp != null) Files.deleteIfExists(gzTmp);
+		}
+	}
 }
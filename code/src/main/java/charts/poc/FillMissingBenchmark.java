@@ -0,0 +1,112 @@
+package charts.poc;
+
+import charts.Covid19Charts;
+import tech.tablesaw.api.DateColumn;
+import tech.tablesaw.api.IntColumn;
+import tech.tablesaw.api.StringColumn;
+import tech.tablesaw.api.Table;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Compares {@link Covid19Charts#fillMissingAtPrevious(Table)} with the previous scan-per-region implementation on a
+ * synthetic sparse openZH-shaped table. Usage: {@code FillMissingBenchmark [regions] [days]}, defaults to 10000 x 200.
+ */
+public class FillMissingBenchmark {
+
+	public static Table syntheticInput(int numRegions, int numDays, long seed) {
+		Random       rnd     = new Random(seed);
+		LocalDate    start   = LocalDate.of(2020, 2, 25);
+		DateColumn   dt      = DateColumn.create("DT");
+		StringColumn region  = StringColumn.create("REGION");
+		IntColumn    conf    = IntColumn.create("CONFIRMED");
+		IntColumn    dead    = IntColumn.create("DEAD");
+		IntColumn    hosp    = IntColumn.create("HOSPITALIZED");
+		for (int r = 0; r < numRegions; r++) {
+			String name      = "R" + r;
+			int    confirmed = 0;
+			int    deceased  = 0;
+			for (int d = rnd.nextInt(numDays / 4 + 1); d < numDays; d++) {
+				confirmed += rnd.nextInt(20);
+				deceased += rnd.nextInt(2);
+				// sparse reporting: roughly a third of the days are missing, some values are not reported
+				if (rnd.nextInt(3) == 0) continue;
+				dt.append(start.plusDays(d));
+				region.append(name);
+				if (rnd.nextInt(10) == 0) conf.appendMissing();
+				else conf.append(confirmed);
+				dead.append(deceased);
+				if (rnd.nextInt(5) == 0) hosp.appendMissing();
+				else hosp.append(rnd.nextInt(100));
+			}
+		}
+		return Table.create(dt, region, conf, dead, hosp);
+	}
+
+	/**
+	 * Implementation of {@code fillMissingAtPrevious} before it was made single-pass, kept as a reference.
+	 */
+	public static Table fillMissingAtPreviousByScan(Table t) {
+		Set<String> regions = new HashSet<>(t.stringColumn("REGION").asList());
+		LocalDate   last_dt = t.dateColumn("DT").max();
+		Table       f       = null;
+		for (String r : regions) {
+			Table       region_data = t.where(t.stringColumn("REGION").isEqualTo(r)).sortAscendingOn("DT");
+			LocalDate[] dates       = region_data.dateColumn("DT").asObjectArray();
+			LocalDate   dt          = region_data.dateColumn("DT").min();
+			int[]       prev_values = new int[t.columnCount() - 2];
+			Arrays.fill(prev_values, 0);
+			while (!dt.isAfter(last_dt)) {
+				int idx = Arrays.binarySearch(dates, dt);
+				if (idx < 0) {
+					region_data.dateColumn("DT").append(dt);
+					region_data.stringColumn("REGION").append(r);
+					for (int c = 0; c < prev_values.length; c++) {
+						region_data.intColumn(c + 2).append(prev_values[c]);
+					}
+				} else {
+					for (int c = 0; c < prev_values.length; c++) {
+						IntColumn col = region_data.intColumn(c + 2);
+						if (col.isMissing(idx) || col.getInt(idx) < prev_values[c]) {
+							col.set(idx, prev_values[c]);
+						} else {
+							prev_values[c] = col.getInt(idx);
+						}
+					}
+				}
+				dt = dt.plusDays(1);
+			}
+			if (f == null) f = region_data;
+			else f = f.append(region_data);
+		}
+		return Objects.requireNonNull(f).sortAscendingOn("DT", "REGION");
+	}
+
+	public static void main(String[] args) {
+		int   numRegions = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+		int   numDays    = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		Table in         = syntheticInput(numRegions, numDays, 42);
+		System.out.println("Input: " + in.rowCount() + " rows, " + numRegions + " regions, " + numDays + " days");
+
+		for (int i = 0; i < 3; i++) {
+			long  t0   = System.nanoTime();
+			Table fast = Covid19Charts.fillMissingAtPrevious(in);
+			long  t1   = System.nanoTime();
+			System.out.printf("single pass: %,d ms, %,d rows%n", (t1 - t0) / 1_000_000, fast.rowCount());
+		}
+
+		long  t0  = System.nanoTime();
+		Table old = fillMissingAtPreviousByScan(in);
+		long  t1  = System.nanoTime();
+		System.out.printf("scan per region: %,d ms, %,d rows%n", (t1 - t0) / 1_000_000, old.rowCount());
+
+		Table fast = Covid19Charts.fillMissingAtPrevious(in).sortAscendingOn("DT", "REGION");
+		for (int c = 0; c < old.columnCount(); c++) {
+			if (!old.column(c).asList().equals(fast.column(c).asList())) {
+				throw new IllegalStateException("Results differ in column " + old.column(c).name());
+			}
+		}
+		System.out.println("Results are identical");
+	}
+}
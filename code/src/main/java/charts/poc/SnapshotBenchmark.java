@@ -0,0 +1,76 @@
+package charts.poc;
+
+import charts.Covid19Charts;
+import charts.TableSnapshot;
+import tech.tablesaw.api.ColumnType;
+import tech.tablesaw.api.DateColumn;
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.StringColumn;
+import tech.tablesaw.api.Table;
+import tech.tablesaw.io.csv.CsvReadOptions;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * Load time of a processed table from CSV (Tablesaw reader) versus a {@link TableSnapshot}, on a synthetic melted JHU
+ * table and the filled openZH-shaped table of {@link FillMissingBenchmark}. Usage: {@code SnapshotBenchmark [regions]
+ * [days]}, defaults to 3000 x 500.
+ */
+public class SnapshotBenchmark {
+
+	public static Table syntheticTimeSeries(int numRegions, int numDays, long seed) {
+		Random       rnd    = new Random(seed);
+		LocalDate    start  = LocalDate.of(2020, 1, 22);
+		int          size   = numRegions * numDays;
+		String[]     region = new String[size];
+		DateColumn   dt     = DateColumn.create("DT");
+		double[]     value  = new double[size];
+		for (int r = 0, i = 0; r < numRegions; r++) {
+			String name = "Country " + r;
+			double v    = 0;
+			for (int d = 0; d < numDays; d++, i++) {
+				v += rnd.nextInt(50);
+				region[i] = name;
+				dt.append(start.plusDays(d));
+				value[i] = rnd.nextInt(1000) == 0 ? Double.NaN : v;
+			}
+		}
+		return Table.create("synthetic", StringColumn.create("REGION", region), dt, DoubleColumn.create("CONFIRMED", value));
+	}
+
+	private static void compare(String label, Table t, Path dir) throws IOException {
+		Path csv      = dir.resolve(label + ".csv");
+		Path snapshot = dir.resolve(label + ".snapshot");
+		t.write().csv(csv.toFile());
+		TableSnapshot.write(t, snapshot);
+		System.out.printf("%s: %,d rows, csv %,d bytes, snapshot %,d bytes%n", label, t.rowCount(), Files.size(csv), Files.size(snapshot));
+
+		ColumnType[] types = t.columnTypes();
+		Table        fromCsv = null, fromSnapshot = null;
+		for (int i = 0; i < 5; i++) {
+			long t0 = System.nanoTime();
+			fromCsv = Table.read().usingOptions(CsvReadOptions.builder(csv.toFile()).columnTypes(types));
+			long t1 = System.nanoTime();
+			fromSnapshot = TableSnapshot.read(snapshot);
+			long t2 = System.nanoTime();
+			System.out.printf("  load csv %,d ms, snapshot %,d ms%n", (t1 - t0) / 1_000_000, (t2 - t1) / 1_000_000);
+		}
+		for (int c = 0; c < t.columnCount(); c++) {
+			if (!t.column(c).asList().equals(fromSnapshot.column(c).asList()))
+				throw new IllegalStateException("Snapshot round trip differs in column " + t.column(c).name());
+		}
+		System.out.println("  snapshot round trip is exact, csv rows " + fromCsv.rowCount());
+	}
+
+	public static void main(String[] args) throws IOException {
+		int  numRegions = args.length > 0 ? Integer.parseInt(args[0]) : 3000;
+		int  numDays    = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+		Path dir        = Files.createTempDirectory("snapshot_benchmark");
+		compare("time_series", syntheticTimeSeries(numRegions, numDays, 42), dir);
+		compare("filled", Covid19Charts.fillMissingAtPrevious(FillMissingBenchmark.syntheticInput(numRegions, numDays, 42)), dir);
+	}
+}
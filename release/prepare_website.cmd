@@ -0,0 +1,2 @@
+cd ../covid19
+git pull
@@ -0,0 +1,6 @@
+cd ../covid19
+git add index.md
+git add ch.md
+git commit index.md -m "update"
+git commit ch.md -m "update"
+git push origin
@@ -1 +1 @@
-start java -cp * charts.UpdateRunner update_website.cmd 10
\ No newline at end of file
+start java -Dcharts.compact=true -cp * charts.UpdateRunner --in-process 10 ../covid19 store prepare_website.cmd publish_website.cmd
\ No newline at end of file